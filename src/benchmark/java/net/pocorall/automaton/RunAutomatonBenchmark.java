@@ -0,0 +1,76 @@
+package net.pocorall.automaton;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing the transition table layouts of {@link RunAutomaton}.
+ * Compiled only by the <code>benchmark</code> profile
+ * (<code>mvn -Pbenchmark test-compile</code>); start it with the
+ * <code>main</code> method from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class RunAutomatonBenchmark {
+
+	@Param({"false", "true"})
+	public boolean premultiply;
+
+	@Param({"[a-z]+@[a-z]+\\.(com|net|org)", "(ab|[c-f]+|g[^h]?)*x"})
+	public String regexp;
+
+	private RunAutomaton automaton;
+	private String[] inputs;
+
+	@Setup
+	public void setUp() {
+		automaton = new RunAutomaton(new RegExp(regexp).toAutomaton(), true, premultiply);
+		Random random = new Random(1);
+		inputs = new String[1000];
+		for (int n = 0; n < inputs.length; n++) {
+			StringBuilder b = new StringBuilder();
+			for (int i = 8 + random.nextInt(56); i > 0; i--)
+				b.append("abcdefghx@.comnetorg".charAt(random.nextInt(20)));
+			inputs[n] = b.toString();
+		}
+	}
+
+	@Benchmark
+	public int run() {
+		int accepted = 0;
+		for (String s : inputs)
+			if (automaton.run(s) == Boolean.TRUE)
+				accepted++;
+		return accepted;
+	}
+
+	@Benchmark
+	public int runLongest() {
+		int total = 0;
+		for (String s : inputs)
+			total += automaton.run(s, 0);
+		return total;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(RunAutomatonBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,17 @@
+package net.pocorall.automaton;
+
+/**
+ * Decides which accept objects minimization may merge: states whose accept
+ * objects have equal classes start in the same block, and the accept objects
+ * of the states merged into one are combined with the accept merger.
+ *
+ * @see MinimizationOperations#minimizeHopcroft(LinkedAutomaton, AcceptClassifier)
+ * @see LinkedAutomaton#setAcceptMerger(AcceptMerger)
+ */
+public interface AcceptClassifier {
+
+	/**
+	 * Returns the class of the given accept object, which is not null.
+	 */
+	Object classify(Object accept);
+}
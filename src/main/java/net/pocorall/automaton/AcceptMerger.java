@@ -0,0 +1,20 @@
+package net.pocorall.automaton;
+
+/**
+ * Combines the accept objects of states that become one state, as in
+ * determinization, intersection and minimization.
+ * <p/>
+ * A merger should be commutative and associative, since the order in which
+ * the accept objects of a set of states are merged is unspecified.
+ *
+ * @see AcceptMergers
+ * @see LinkedAutomaton#setAcceptMerger(AcceptMerger)
+ */
+public interface AcceptMerger {
+
+	/**
+	 * Returns the accept object of a state that accepts for both given accept
+	 * objects, neither of which is null.
+	 */
+	Object merge(Object a, Object b);
+}
@@ -0,0 +1,101 @@
+package net.pocorall.automaton;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Common {@link AcceptMerger} policies.
+ */
+final public class AcceptMergers {
+
+	private AcceptMergers() {
+	}
+
+	/**
+	 * Keeps an accept object shared by all merged states, and uses
+	 * <code>Boolean.TRUE</code> where they differ. This is the default policy.
+	 */
+	public static final AcceptMerger DEFAULT = new AcceptMerger() {
+		public Object merge(Object a, Object b) {
+			return a.equals(b) ? a : Boolean.TRUE;
+		}
+	};
+
+	/**
+	 * Returns a merger that keeps the smallest accept object in their natural
+	 * order, such as the highest priority as an <code>Integer</code> rank.
+	 */
+	public static AcceptMerger minimum() {
+		return new AcceptMerger() {
+			@SuppressWarnings("unchecked")
+			public Object merge(Object a, Object b) {
+				return ((Comparable<Object>) a).compareTo(b) <= 0 ? a : b;
+			}
+		};
+	}
+
+	/**
+	 * Returns a merger that keeps the smallest accept object in the order of
+	 * the given comparator.
+	 */
+	public static <T> AcceptMerger minimum(final Comparator<T> comparator) {
+		return new AcceptMerger() {
+			@SuppressWarnings("unchecked")
+			public Object merge(Object a, Object b) {
+				return comparator.compare((T) a, (T) b) <= 0 ? a : b;
+			}
+		};
+	}
+
+	/**
+	 * Returns a merger that collects all accept objects into an unmodifiable
+	 * <code>Set</code>. The accept object of a state that was not merged is
+	 * left as it is.
+	 */
+	public static AcceptMerger collectAll() {
+		return new AcceptMerger() {
+			public Object merge(Object a, Object b) {
+				Set<Object> elements = new HashSet<Object>();
+				add(elements, a);
+				add(elements, b);
+				return new AcceptSet(elements);
+			}
+		};
+	}
+
+	private static void add(Set<Object> elements, Object accept) {
+		if (accept instanceof AcceptSet)
+			elements.addAll((AcceptSet) accept);
+		else
+			elements.add(accept);
+	}
+
+	/**
+	 * Unmodifiable set of accept objects made by {@link #collectAll()}.
+	 */
+	static final class AcceptSet extends AbstractSet<Object> implements Serializable {
+
+		static final long serialVersionUID = 10001;
+
+		private final Set<Object> elements;
+
+		AcceptSet(Set<Object> elements) {
+			this.elements = Collections.unmodifiableSet(elements);
+		}
+
+		@Override
+		public Iterator<Object> iterator() {
+			return elements.iterator();
+		}
+
+		@Override
+		public int size() {
+			return elements.size();
+		}
+	}
+}
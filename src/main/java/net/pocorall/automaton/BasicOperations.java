@@ -62,7 +62,7 @@ final public class BasicOperations {
 			a2 = a2.cloneExpandedIfRequired();
 		}
 		for (State s : a1.getAcceptStates()) {
-			s.accept = false;
+			s.accept = null;
 			s.addEpsilon(a2.initial);
 		}
 		a1.deterministic = deterministic;
@@ -119,7 +119,7 @@ final public class BasicOperations {
 						aa = aa.cloneExpandedIfRequired();
 					Set<State> ns = aa.getAcceptStates();
 					for (State s : ac) {
-						s.accept = false;
+						s.accept = null;
 						s.addEpsilon(aa.initial);
 						if (s.accept != null)
 							ns.add(s);
@@ -287,7 +287,7 @@ final public class BasicOperations {
 		newstates.put(p, p);
 		while (worklist.size() > 0) {
 			p = worklist.removeFirst();
-			p.s.accept = p.s1.accept != null && p.s2.accept != null ? Object.class : null;
+			p.s.accept = p.s1.accept != null && p.s2.accept != null ? accept_merger.merge(p.s1.accept, p.s2.accept) : null;
 			Transition[] t1 = transitions1[p.s1.number];
 			Transition[] t2 = transitions2[p.s2.number];
 			for (int n1 = 0, b2 = 0; n1 < t1.length; n1++) {
@@ -432,57 +432,230 @@ final public class BasicOperations {
 	 * Complexity: exponential in number of states.
 	 */
 	public static void determinize(LinkedAutomaton a) {
+		determinize(a, accept_merger);
+	}
+
+	/**
+	 * Determinizes the given automaton, combining the accept objects of the
+	 * states that become one state with the given merger.
+	 * <p/>
+	 * Complexity: exponential in number of states.
+	 */
+	public static void determinize(LinkedAutomaton a, AcceptMerger merger) {
 		if (a.deterministic)
 			return;
 		Set<State> initialset = new HashSet<State>();
 		initialset.add(a.initial);
-		determinize(a, initialset);
+		determinize(a, initialset, merger);
 	}
 
 	/**
 	 * Determinizes the given automaton using the given set of initial states.
 	 */
 	static void determinize(LinkedAutomaton a, Set<State> initialset) {
-		char[] points = a.getStartPoints();
+		determinize(a, initialset, accept_merger);
+	}
+
+	/**
+	 * Determinizes the given automaton using the given set of initial states,
+	 * which may be unreachable from its initial state.
+	 * <p/>
+	 * The states are numbered densely, and each set of states is a sorted
+	 * <code>int</code> array, interned by its contents. The successors of a
+	 * set on all intervals are found in one sweep over the sorted transitions
+	 * of its members. States from which no accept state is reachable are left
+	 * out of the sets, so no dead states are built.
+	 */
+	static void determinize(LinkedAutomaton a, Set<State> initialset, AcceptMerger merger) {
+		Set<State> states = a.getStates();
+		for (State q : initialset)
+			if (!states.contains(q)) {
+				states = getReachableStates(initialset, states);
+				break;
+			}
+		char[] points = getStartPoints(states);
+		Transition[][] transitions = getSortedTransitions(states);
+		int n = states.size();
+		Object[] accept = new Object[n];
+		int[][] first = new int[n][]; // index of the first point of each transition
+		for (State q : states) {
+			accept[q.number] = q.accept;
+			Transition[] ts = transitions[q.number];
+			first[q.number] = new int[ts.length];
+			for (int k = 0; k < ts.length; k++)
+				first[q.number][k] = Arrays.binarySearch(points, ts[k].min);
+		}
+		boolean[] live = getLiveStates(transitions, accept);
+		// successors on each point of the set being expanded, unsorted and with duplicates
+		int[][] succ = new int[points.length][4];
+		int[] count = new int[points.length];
+		int[] touched = new int[points.length];
+
 		// subset construction
-		Map<Set<State>, Set<State>> sets = new HashMap<Set<State>, Set<State>>();
-		LinkedList<Set<State>> worklist = new LinkedList<Set<State>>();
-		Map<Set<State>, State> newstate = new HashMap<Set<State>, State>();
-		sets.put(initialset, initialset);
-		worklist.add(initialset);
+		Map<StateSet, State> newstate = new HashMap<StateSet, State>();
+		ArrayList<StateSet> worklist = new ArrayList<StateSet>();
+		int[] init = new int[initialset.size()];
+		int m = 0;
+		for (State q : initialset)
+			init[m++] = q.number;
+		Arrays.sort(init);
+		StateSet initial = new StateSet(init);
 		a.initial = new State();
-		newstate.put(initialset, a.initial);
-		while (worklist.size() > 0) {
-			Set<State> s = worklist.removeFirst();
+		newstate.put(initial, a.initial);
+		worklist.add(initial);
+		for (int w = 0; w < worklist.size(); w++) {
+			StateSet s = worklist.get(w);
+			worklist.set(w, null);
 			State r = newstate.get(s);
-			for (State q : s)
-				if (q.accept != null) {
-					r.accept = true;
-					break;
+			int touchedCount = 0;
+			for (int q : s.members) {
+				if (accept[q] != null)
+					r.accept = r.accept == null ? accept[q] : merger.merge(r.accept, accept[q]);
+				Transition[] ts = transitions[q];
+				for (int k = 0; k < ts.length; k++) {
+					int to = ts[k].to.number;
+					if (!live[to])
+						continue;
+					char max = ts[k].max;
+					for (int p = first[q][k]; p < points.length && points[p] <= max; p++) {
+						if (count[p] == 0)
+							touched[touchedCount++] = p;
+						if (count[p] == succ[p].length) {
+							int[] t = new int[count[p] * 2];
+							System.arraycopy(succ[p], 0, t, 0, count[p]);
+							succ[p] = t;
+						}
+						succ[p][count[p]++] = to;
+					}
 				}
-			for (int n = 0; n < points.length; n++) {
-				Set<State> p = new HashSet<State>();
-				for (State q : s)
-					for (Transition t : q.transitions)
-						if (t.min <= points[n] && points[n] <= t.max)
-							p.add(t.to);
-				if (!sets.containsKey(p)) {
-					sets.put(p, p);
-					worklist.add(p);
-					newstate.put(p, new State());
+			}
+			Arrays.sort(touched, 0, touchedCount);
+			// adjacent intervals with the same target are merged
+			State last = null;
+			char lastMin = 0, lastMax = 0;
+			for (int i = 0; i < touchedCount; i++) {
+				int p = touched[i];
+				int[] members = new int[count[p]];
+				System.arraycopy(succ[p], 0, members, 0, count[p]);
+				count[p] = 0;
+				Arrays.sort(members);
+				members = unique(members);
+				StateSet key = new StateSet(members);
+				State q = newstate.get(key);
+				if (q == null) {
+					q = new State();
+					newstate.put(key, q);
+					worklist.add(key);
+				}
+				char max = p + 1 < points.length ? (char) (points[p + 1] - 1) : Character.MAX_VALUE;
+				if (q == last && points[p] == lastMax + 1)
+					lastMax = max;
+				else {
+					if (last != null)
+						r.transitions.add(new Transition(lastMin, lastMax, last));
+					last = q;
+					lastMin = points[p];
+					lastMax = max;
 				}
-				State q = newstate.get(p);
-				char min = points[n];
-				char max;
-				if (n + 1 < points.length)
-					max = (char) (points[n + 1] - 1);
-				else
-					max = Character.MAX_VALUE;
-				r.transitions.add(new Transition(min, max, q));
 			}
+			if (last != null)
+				r.transitions.add(new Transition(lastMin, lastMax, last));
 		}
 		a.deterministic = true;
-		a.removeDeadTransitions();
+		a.clearHashCode();
+	}
+
+	/**
+	 * Returns for each state number whether an accept state is reachable from
+	 * the state.
+	 */
+	private static boolean[] getLiveStates(Transition[][] transitions, Object[] accept) {
+		int n = transitions.length;
+		int[] first = new int[n + 1]; // predecessors first[q] to first[q + 1] - 1 of each state q
+		for (Transition[] ts : transitions)
+			for (Transition t : ts)
+				first[t.to.number + 1]++;
+		for (int q = 0; q < n; q++)
+			first[q + 1] += first[q];
+		int[] from = new int[first[n]];
+		int[] fill = new int[n];
+		for (int p = 0; p < n; p++)
+			for (Transition t : transitions[p]) {
+				int q = t.to.number;
+				from[first[q] + fill[q]++] = p;
+			}
+		boolean[] live = new boolean[n];
+		int[] worklist = new int[n];
+		int size = 0;
+		for (int q = 0; q < n; q++)
+			if (accept[q] != null) {
+				live[q] = true;
+				worklist[size++] = q;
+			}
+		while (size > 0) {
+			int q = worklist[--size];
+			for (int k = first[q]; k < first[q + 1]; k++)
+				if (!live[from[k]]) {
+					live[from[k]] = true;
+					worklist[size++] = from[k];
+				}
+		}
+		return live;
+	}
+
+	/**
+	 * Set of states of a nondeterministic automaton, by state number.
+	 */
+	private static final class StateSet {
+
+		final int[] members; // sorted
+		final int hash;
+
+		StateSet(int[] members) {
+			this.members = members;
+			hash = Arrays.hashCode(members);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof StateSet && Arrays.equals(members, ((StateSet) obj).members);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Returns the given sorted array without duplicates.
+	 */
+	private static int[] unique(int[] a) {
+		int k = 0;
+		for (int i = 0; i < a.length; i++)
+			if (k == 0 || a[k - 1] != a[i])
+				a[k++] = a[i];
+		if (k == a.length)
+			return a;
+		int[] b = new int[k];
+		System.arraycopy(a, 0, b, 0, k);
+		return b;
+	}
+
+	/**
+	 * Returns the given states and the states reachable from the given initial states.
+	 */
+	private static Set<State> getReachableStates(Set<State> initialset, Set<State> states) {
+		Set<State> visited = new HashSet<State>(states);
+		LinkedList<State> worklist = new LinkedList<State>();
+		for (State q : initialset)
+			if (visited.add(q))
+				worklist.add(q);
+		while (!worklist.isEmpty())
+			for (Transition t : worklist.removeFirst().transitions)
+				if (visited.add(t.to))
+					worklist.add(t.to);
+		return visited;
 	}
 
 	/**
@@ -0,0 +1,328 @@
+package net.pocorall.automaton;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Automaton that runs a small nondeterministic automaton without
+ * determinizing it, keeping the set of active states in the bits of a few
+ * <code>long</code> words.
+ * <p/>
+ * The automaton is first made homogeneous, as a Glushkov automaton is: every
+ * transition into a state is split off into its own position, so all
+ * transitions into a position read the same chars. A step is then
+ * <code>D = follow(D) &amp; mask[c]</code>, where <code>follow</code> is looked
+ * up one byte of <code>D</code> at a time and <code>mask</code> holds the
+ * positions entered by each char class (see Navarro and Raffinot, "Fast and
+ * Flexible String Matching by Combining Bit-parallelism and Suffix
+ * Automata"). An automaton has at most
+ * {@link DefaultAutomaton#getNumberOfTransitions()} + 1 positions, of which
+ * at most {@link #MAX_POSITIONS} are supported.
+ * <p/>
+ * When several accepting states are active, their accept objects are merged
+ * by the {@link AcceptMerger} of {@link LinkedAutomaton} at construction, as
+ * determinization merges them. The merged object of each set of accepting
+ * positions is cached on first use, up to {@link #MAX_CACHED_ACCEPTS} sets.
+ */
+public class BitParallelAutomaton implements Automaton {
+
+	/**
+	 * Largest supported number of positions. The follow tables take
+	 * <code>2048 * words<sup>2</sup></code> longs, where <code>words</code> is
+	 * the number of positions divided by 64, rounded up.
+	 */
+	public static final int MAX_POSITIONS = 256;
+
+	/**
+	 * Largest number of merged accept objects cached.
+	 */
+	public static final int MAX_CACHED_ACCEPTS = 4096;
+
+	private final char[] points;
+	private final int[] latin1; // char class of each char below 256
+	private final int words;
+	private final long[] masks; // positions entered by each char class, words per class
+	private final long[] follow; // for each byte of the active set, the positions it enters, words per entry
+	private final long[] acceptMask;
+	private final Object[] accepts; // accept object of each position
+	private final int[] positionState; // state of each position
+	private final AcceptMerger merger;
+	private final ConcurrentHashMap<Object, Object> merged = new ConcurrentHashMap<Object, Object>(); // by Long or Mask of accepting positions
+
+	/**
+	 * Constructs a new <code>BitParallelAutomaton</code>.
+	 *
+	 * @param a an automaton, deterministic or not
+	 * @throws IllegalArgumentException if the automaton has more than
+	 *                                  {@link #MAX_POSITIONS} positions
+	 */
+	public BitParallelAutomaton(DefaultAutomaton a) {
+		a = a.cloneExpanded();
+		points = a.getStartPoints();
+		Set<State> states = a.getStates();
+		Transition[][] transitions = LinkedAutomaton.getSortedTransitions(states);
+		State[] byNumber = new State[states.size()];
+		for (State s : states)
+			byNumber[s.number] = s;
+
+		// position 0 is the initial state, the others are the transitions into each state, by char range
+		Map<Long, Integer> index = new HashMap<Long, Integer>();
+		positionState = new int[a.getNumberOfTransitions() + 1];
+		char[] min = new char[positionState.length];
+		char[] max = new char[positionState.length];
+		positionState[0] = a.initial.number;
+		int positions = 1;
+		for (Transition[] ts : transitions)
+			for (Transition t : ts) {
+				Long key = position(t);
+				if (!index.containsKey(key)) {
+					index.put(key, positions);
+					positionState[positions] = t.to.number;
+					min[positions] = t.min;
+					max[positions] = t.max;
+					positions++;
+				}
+			}
+		if (positions > MAX_POSITIONS)
+			throw new IllegalArgumentException("Too many positions: " + positions);
+		words = (positions + 63) >>> 6;
+
+		masks = new long[points.length * words];
+		for (int p = 1; p < positions; p++) {
+			int c = Arrays.binarySearch(points, min[p]);
+			for (; c < points.length && points[c] <= max[p]; c++)
+				masks[c * words + (p >>> 6)] |= 1L << p;
+		}
+		acceptMask = new long[words];
+		accepts = new Object[positions];
+		merger = LinkedAutomaton.accept_merger;
+		long[] followOf = new long[positions * words];
+		for (int p = 0; p < positions; p++) {
+			State s = byNumber[positionState[p]];
+			if (s.accept != null) {
+				acceptMask[p >>> 6] |= 1L << p;
+				accepts[p] = s.accept;
+			}
+			for (Transition t : transitions[s.number]) {
+				int q = index.get(position(t));
+				followOf[p * words + (q >>> 6)] |= 1L << q;
+			}
+		}
+		follow = new long[words * 8 * 256 * words];
+		for (int p = 0; p < positions; p++) {
+			// entry b of byte k holds the follow sets of the positions of the bits of b
+			int k = p >>> 3;
+			int bit = 1 << (p & 7);
+			for (int b = bit; b < 256; b = (b + 1) | bit)
+				for (int w = 0; w < words; w++)
+					follow[((k << 8) + b) * words + w] |= followOf[p * words + w];
+		}
+
+		latin1 = new int[256];
+		for (int c = 0, i = 0; c < 256; c++) {
+			while (i + 1 < points.length && points[i + 1] <= c)
+				i++;
+			latin1[c] = i;
+		}
+	}
+
+	/**
+	 * Set of positions of an automaton with several words, as a key of
+	 * <code>merged</code>.
+	 */
+	private static final class Mask {
+
+		final long[] bits;
+		final int hash;
+
+		Mask(long[] bits) {
+			this.bits = bits;
+			hash = Arrays.hashCode(bits);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Mask && Arrays.equals(bits, ((Mask) obj).bits);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static Long position(Transition t) {
+		return ((long) t.to.number << 32) | ((long) t.min << 16) | t.max;
+	}
+
+	/**
+	 * Returns the char class of the given char.
+	 */
+	final int getCharClass(char c) {
+		if (c < 256)
+			return latin1[c];
+		int i = Arrays.binarySearch(points, c);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/**
+	 * Returns the active set after reading a char of the given class, for
+	 * automata with a single word.
+	 */
+	private long step(long d, int c) {
+		long r = 0;
+		for (int k = 0; d != 0; k += 256, d >>>= 8)
+			r |= follow[k + (int) (d & 0xff)];
+		return r & masks[c];
+	}
+
+	/**
+	 * Sets <code>next</code> to the active set after reading a char of the given
+	 * class, and returns whether it is not empty.
+	 */
+	private boolean step(long[] d, long[] next, int c) {
+		final int words = this.words;
+		Arrays.fill(next, 0);
+		for (int w = 0; w < words; w++) {
+			long x = d[w];
+			for (int k = w << 3; x != 0; k++, x >>>= 8) {
+				int e = ((k << 8) + (int) (x & 0xff)) * words;
+				for (int v = 0; v < words; v++)
+					next[v] |= follow[e + v];
+			}
+		}
+		long any = 0;
+		for (int v = 0; v < words; v++)
+			any |= next[v] &= masks[c * words + v];
+		return any != 0;
+	}
+
+	/**
+	 * Returns the merged accept object of the accepting positions of the given
+	 * active set, null if there are none.
+	 */
+	private Object accept(long[] d) {
+		int first = -1;
+		for (int w = 0; w < words; w++) {
+			long x = d[w] & acceptMask[w];
+			if (x == 0)
+				continue;
+			if (first >= 0 || (x & (x - 1)) != 0) {
+				long[] bits = new long[words];
+				for (int v = 0; v < words; v++)
+					bits[v] = d[v] & acceptMask[v];
+				return merge(new Mask(bits), bits);
+			}
+			first = (w << 6) + Long.numberOfTrailingZeros(x);
+		}
+		return first >= 0 ? accepts[first] : null;
+	}
+
+	private Object accept(long d) {
+		long x = d & acceptMask[0];
+		if (x == 0)
+			return null;
+		if ((x & (x - 1)) == 0)
+			return accepts[Long.numberOfTrailingZeros(x)];
+		return merge(x, new long[] {x});
+	}
+
+	/**
+	 * Returns the accept objects of the states of the given accepting
+	 * positions, merged, and caches it under the given key.
+	 */
+	private Object merge(Object key, long[] bits) {
+		Object accept = merged.get(key);
+		if (accept != null)
+			return accept;
+		Set<Integer> states = new HashSet<Integer>();
+		for (int w = 0; w < bits.length; w++)
+			for (long x = bits[w]; x != 0; x &= x - 1) {
+				int p = (w << 6) + Long.numberOfTrailingZeros(x);
+				if (states.add(positionState[p]))
+					accept = accept == null ? accepts[p] : merger.merge(accept, accepts[p]);
+			}
+		if (merged.size() < MAX_CACHED_ACCEPTS)
+			merged.put(key, accept);
+		return accept;
+	}
+
+	/**
+	 * Returns the accept object if the given string is accepted by this
+	 * automaton, null or false otherwise.
+	 */
+	public Object run(String s) {
+		int l = s.length();
+		if (words == 1) {
+			long d = 1;
+			for (int i = 0; i < l; i++) {
+				d = step(d, getCharClass(s.charAt(i)));
+				if (d == 0)
+					return false;
+			}
+			return accept(d);
+		}
+		long[] d = new long[words];
+		long[] next = new long[words];
+		d[0] = 1;
+		for (int i = 0; i < l; i++) {
+			if (!step(d, next, getCharClass(s.charAt(i))))
+				return false;
+			long[] t = d;
+			d = next;
+			next = t;
+		}
+		return accept(d);
+	}
+
+	/**
+	 * Finds the longest match in the given input that starts at
+	 * <code>begin</code>.
+	 *
+	 * @param match receives the start and end of the match
+	 * @return the accept object of the match, null if there is none
+	 */
+	Object match(CharSequence s, int begin, int[] match) {
+		int l = s.length();
+		Object accept = accepts[0];
+		int end = accept != null ? begin : -1;
+		if (words == 1) {
+			long d = 1;
+			for (int i = begin; i < l; i++) {
+				d = step(d, getCharClass(s.charAt(i)));
+				if (d == 0)
+					break;
+				Object o = accept(d);
+				if (o != null) {
+					accept = o;
+					end = i + 1;
+				}
+			}
+		} else {
+			long[] d = new long[words];
+			long[] next = new long[words];
+			d[0] = 1;
+			for (int i = begin; i < l; i++) {
+				if (!step(d, next, getCharClass(s.charAt(i))))
+					break;
+				long[] t = d;
+				d = next;
+				next = t;
+				Object o = accept(d);
+				if (o != null) {
+					accept = o;
+					end = i + 1;
+				}
+			}
+		}
+		if (end < 0)
+			return null;
+		match[0] = begin;
+		match[1] = end;
+		return accept;
+	}
+}
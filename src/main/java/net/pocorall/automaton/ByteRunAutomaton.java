@@ -0,0 +1,148 @@
+package net.pocorall.automaton;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Finite-state automaton with fast run operation over UTF-8 encoded bytes.
+ * <p/>
+ * It runs the byte automaton of {@link Utf8Operations#toUtf8(DefaultAutomaton)}
+ * with the transition table of a {@link RunAutomaton}, so raw <code>byte[]</code>
+ * and {@link ByteBuffer} input, such as a mapped file, can be matched without
+ * decoding it first.
+ */
+public class ByteRunAutomaton implements Serializable {
+
+	static final long serialVersionUID = 10001;
+
+	final RunAutomaton automaton; // over the chars 0 to 255
+
+	/**
+	 * Constructs a new <code>ByteRunAutomaton</code> that accepts the UTF-8
+	 * encodings of the strings accepted by the given automaton.
+	 *
+	 * @param a an automaton over chars
+	 */
+	public ByteRunAutomaton(DefaultAutomaton a) {
+		automaton = new RunAutomaton(Utf8Operations.toUtf8(a), true);
+	}
+
+	/**
+	 * Returns the state obtained by reading the given byte from the given state,
+	 * in the representation of the transition table.
+	 */
+	final int next(int p, byte b) {
+		return automaton.next(p, (char) (b & 0xff));
+	}
+
+	/**
+	 * Returns the accept object if the given bytes are accepted by this automaton,
+	 * null or false otherwise.
+	 *
+	 * @param b   the bytes
+	 * @param off offset of the first byte
+	 * @param len number of bytes
+	 */
+	public Object run(byte[] b, int off, int len) {
+		final RunAutomaton a = automaton;
+		final int dead = a.dead;
+		int p = a.start;
+		for (int i = off, end = off + len; i < end; i++) {
+			p = next(p, b[i]);
+			if (p == dead)
+				return false;
+		}
+		return a.accept[a.stateOf(p)];
+	}
+
+	/**
+	 * Returns the accept object if the remaining bytes of the given buffer are
+	 * accepted by this automaton, null or false otherwise. The position of the
+	 * buffer is not changed.
+	 */
+	public Object run(ByteBuffer b) {
+		if (b.hasArray())
+			return run(b.array(), b.arrayOffset() + b.position(), b.remaining());
+		final RunAutomaton a = automaton;
+		final int dead = a.dead;
+		int p = a.start;
+		for (int i = b.position(), end = b.limit(); i < end; i++) {
+			p = next(p, b.get(i));
+			if (p == dead)
+				return false;
+		}
+		return a.accept[a.stateOf(p)];
+	}
+
+	/**
+	 * Finds the leftmost-longest match in the given bytes that starts between
+	 * <code>begin</code> and <code>lastStart</code>. Bytes up to <code>limit</code>
+	 * are read.
+	 *
+	 * @param match receives the start and end of the match, or -1 if there is none
+	 * @return the accept object of the match, null if there is none
+	 */
+	final Object find(ByteBuffer b, int begin, int lastStart, int limit, int[] match) {
+		final RunAutomaton a = automaton;
+		final int dead = a.dead;
+		final int acceptLimit = a.acceptLimit;
+		final boolean[] startClasses = a.startClasses;
+		final int skipEnd = Math.min(limit, lastStart + 1);
+		for (; begin <= lastStart; begin++) {
+			if (startClasses != null)
+				while (begin < skipEnd && !startClasses[a.getCharClass((char) (b.get(begin) & 0xff))])
+					begin++;
+			else
+				// a match, even an empty one, starts at a char boundary, not at a continuation byte
+				while (begin < skipEnd && (b.get(begin) & 0xc0) == 0x80)
+					begin++;
+			if (begin > lastStart)
+				break;
+			int p = a.start;
+			int acceptState = p;
+			int end = p < acceptLimit ? begin : -1;
+			for (int i = begin; i < limit; i++) {
+				p = next(p, b.get(i));
+				if (p == dead)
+					break;
+				if (p < acceptLimit) {
+					acceptState = p;
+					end = i + 1;
+				}
+			}
+			if (end >= 0) {
+				match[0] = begin;
+				match[1] = end;
+				return a.accept[a.stateOf(acceptState)];
+			}
+		}
+		match[0] = match[1] = -1;
+		return null;
+	}
+
+	/**
+	 * Returns where the search for the match after the given one starts: at its
+	 * end, or after it if it is empty (as with a*).
+	 */
+	static int nextBegin(int[] match) {
+		return match[1] > match[0] ? match[1] : match[1] + 1;
+	}
+
+	/**
+	 * Creates a new matcher for the remaining bytes of the given buffer.
+	 *
+	 * @param b the bytes to search
+	 * @return A new matcher for the given input
+	 */
+	public ByteRunAutomatonMatcher newMatcher(ByteBuffer b) {
+		return new ByteRunAutomatonMatcher(b, this);
+	}
+
+	/**
+	 * Returns a string representation of the byte automaton.
+	 */
+	@Override
+	public String toString() {
+		return automaton.toString();
+	}
+}
@@ -0,0 +1,67 @@
+package net.pocorall.automaton;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the matches of a {@link ByteRunAutomaton} in the bytes of a heap or
+ * direct {@link ByteBuffer}. The matches are those that
+ * {@link RunAutomatonMatcher#find()} finds in the decoded chars, with offsets
+ * given as indexes into the buffer. The position of the buffer is not changed.
+ *
+ * @see ByteRunAutomaton#newMatcher(ByteBuffer)
+ */
+public class ByteRunAutomatonMatcher {
+
+	private final ByteBuffer bytes;
+	private final ByteRunAutomaton automaton;
+	private final int limit;
+
+	private final int[] match = {-1, -1}; // start and end of the last match
+	private int next; // where the next find starts, -1 if there are no more matches
+
+	ByteRunAutomatonMatcher(ByteBuffer bytes, ByteRunAutomaton automaton) {
+		this.bytes = bytes;
+		this.automaton = automaton;
+		limit = bytes.limit();
+		next = bytes.position();
+	}
+
+	/**
+	 * Finds the next leftmost-longest match.
+	 *
+	 * @return the accept object of the match, null if there are no more matches
+	 */
+	public Object find() {
+		if (next < 0)
+			return null;
+		Object accept = automaton.find(bytes, next, limit, limit, match);
+		if (accept == null) {
+			next = -1;
+			return null;
+		}
+		next = ByteRunAutomaton.nextBegin(match);
+		return accept;
+	}
+
+	/**
+	 * Returns the index of the first byte of the last match.
+	 *
+	 * @throws IllegalStateException if the last <code>find</code> found no match
+	 */
+	public int start() {
+		if (match[0] < 0)
+			throw new IllegalStateException("There was no available match.");
+		return match[0];
+	}
+
+	/**
+	 * Returns the index after the last byte of the last match.
+	 *
+	 * @throws IllegalStateException if the last <code>find</code> found no match
+	 */
+	public int end() {
+		if (match[1] < 0)
+			throw new IllegalStateException("There was no available match.");
+		return match[1];
+	}
+}
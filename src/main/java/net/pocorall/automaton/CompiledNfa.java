@@ -0,0 +1,107 @@
+package net.pocorall.automaton;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Array form of a nondeterministic automaton, used by
+ * {@link LinkedAutomaton#run(String)}. States are numbered densely, the
+ * transitions of each state are sorted intervals in flat arrays, and the
+ * active states are kept in sparse sets, so a run neither traverses the state
+ * graph nor allocates.
+ */
+final class CompiledNfa {
+
+	private final int initial;
+	private final int[] first; // transitions first[s] to first[s + 1] - 1 belong to state s
+	private final char[] min;
+	private final char[] max;
+	private final int[] to;
+	private final Object[] accept;
+
+	// spare buffers of a run, taken by one run at a time
+	private final AtomicReference<int[][]> scratch = new AtomicReference<int[][]>();
+
+	CompiledNfa(LinkedAutomaton a) {
+		Set<State> states = a.getStates();
+		Transition[][] transitions = LinkedAutomaton.getSortedTransitions(states);
+		int n = states.size();
+		accept = new Object[n];
+		for (State s : states)
+			accept[s.number] = s.accept;
+		initial = a.initial.number;
+		first = new int[n + 1];
+		for (int s = 0; s < n; s++)
+			first[s + 1] = first[s] + transitions[s].length;
+		min = new char[first[n]];
+		max = new char[first[n]];
+		to = new int[first[n]];
+		for (int s = 0; s < n; s++)
+			for (int k = 0; k < transitions[s].length; k++) {
+				Transition t = transitions[s][k];
+				min[first[s] + k] = t.min;
+				max[first[s] + k] = t.max;
+				to[first[s] + k] = t.to.number;
+			}
+	}
+
+	/**
+	 * Returns the accept objects of the accepting states reached by the given
+	 * string, merged by the {@link AcceptMerger} of {@link LinkedAutomaton} as
+	 * determinization merges them, <code>false</code> if there are none, or the
+	 * accept object of the initial state if the string is empty.
+	 */
+	Object run(String s) {
+		int[][] b = scratch.getAndSet(null);
+		if (b == null) {
+			int n = accept.length;
+			b = new int[][] {new int[n], new int[n], new int[n], new int[n]};
+		}
+		// sparse sets: dense holds the members, sparse the index of each member in dense
+		int[] dense = b[0], sparse = b[1], nextDense = b[2], nextSparse = b[3];
+		int count = 1;
+		dense[0] = initial;
+		sparse[initial] = 0;
+		for (int i = 0, l = s.length(); i < l; i++) {
+			char c = s.charAt(i);
+			int nextCount = 0;
+			for (int j = 0; j < count; j++) {
+				int p = dense[j];
+				for (int k = first[p], end = first[p + 1]; k < end && min[k] <= c; k++) {
+					int q = to[k];
+					if (c <= max[k]) {
+						int x = nextSparse[q];
+						if (x >= nextCount || nextDense[x] != q) {
+							nextSparse[q] = nextCount;
+							nextDense[nextCount++] = q;
+						}
+					}
+				}
+			}
+			int[] t = dense;
+			dense = nextDense;
+			nextDense = t;
+			t = sparse;
+			sparse = nextSparse;
+			nextSparse = t;
+			count = nextCount;
+			if (count == 0)
+				break;
+		}
+		Object result = null;
+		if (s.length() == 0)
+			result = accept[initial];
+		else {
+			AcceptMerger merger = LinkedAutomaton.accept_merger;
+			for (int j = 0; j < count; j++) {
+				Object o = accept[dense[j]];
+				if (o != null)
+					result = result == null ? o : merger.merge(result, o);
+			}
+			if (result == null)
+				result = false;
+		}
+		scratch.set(b);
+		return result;
+	}
+}
@@ -0,0 +1,230 @@
+package net.pocorall.automaton;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Aho-Corasick automaton for a dictionary of strings with accept objects.
+ * <p/>
+ * The automaton is a trie of the dictionary with failure links (to the node of
+ * the longest proper suffix that is also in the trie) and output links (to the
+ * node of the longest proper suffix that is a dictionary string).
+ * {@link #findAll(CharSequence, MatchHandler)} scans a text in one pass, in time
+ * linear in its length plus the number of reported matches, and
+ * {@link #findLongest(CharSequence, MatchHandler)} in time linear in its
+ * length, however many strings the dictionary has.
+ *
+ * @see StringUnionOperations#completeDictionary()
+ */
+public class DictionaryAutomaton implements Serializable, Automaton {
+
+	static final long serialVersionUID = 70001;
+
+	private static final int BLOCK_SIZE = 4096;
+
+	// nodes are numbered in breadth-first order, node 0 is the root
+	char[] labels; // label of the edge into each node
+	int[] firstChild; // children of node n are the nodes firstChild[n] to firstChild[n + 1] - 1, sorted by label
+	Object[] accept; // accept object of each node, null if no dictionary string ends there
+	int[] depth; // length of the string of each node
+	int[] fail; // failure link of each node
+	int[] output; // nearest accepting node on the failure chain, -1 if none
+
+	private transient volatile DictionaryAutomaton reverse; // automaton of the reversed strings, see findLongest
+	private transient int maxDepth; // length of the longest string, set with reverse
+
+	/**
+	 * Constructs a new <code>DictionaryAutomaton</code> from a trie whose nodes
+	 * are numbered in breadth-first order.
+	 */
+	DictionaryAutomaton(char[] labels, int[] firstChild, Object[] accept) {
+		this.labels = labels;
+		this.firstChild = firstChild;
+		this.accept = accept;
+		int size = accept.length;
+		depth = new int[size];
+		fail = new int[size];
+		output = new int[size];
+		output[0] = -1;
+		for (int n = 0; n < size; n++)
+			for (int v = firstChild[n]; v < firstChild[n + 1]; v++) {
+				depth[v] = depth[n] + 1;
+				int f = 0;
+				if (n != 0) {
+					for (f = fail[n]; ; f = fail[f]) {
+						int x = child(f, labels[v]);
+						if (x >= 0) {
+							f = x;
+							break;
+						}
+						if (f == 0)
+							break;
+					}
+				}
+				fail[v] = f;
+				output[v] = accept[f] != null ? f : output[f];
+			}
+	}
+
+	/**
+	 * Returns the child of the given node along the given char, -1 if none.
+	 */
+	final int child(int node, char c) {
+		int lo = firstChild[node];
+		int hi = firstChild[node + 1] - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char m = labels[mid];
+			if (m < c)
+				lo = mid + 1;
+			else if (m > c)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the node reached by reading the given char at the given node,
+	 * following failure links where the trie has no edge.
+	 */
+	final int next(int node, char c) {
+		while (true) {
+			int x = child(node, c);
+			if (x >= 0)
+				return x;
+			if (node == 0)
+				return 0;
+			node = fail[node];
+		}
+	}
+
+	/**
+	 * Returns the number of trie nodes.
+	 */
+	public int getSize() {
+		return accept.length;
+	}
+
+	/**
+	 * Returns the accept object of the given string if it is in the dictionary,
+	 * null or false otherwise.
+	 */
+	public Object run(String s) {
+		int node = 0;
+		for (int i = 0; i < s.length(); i++) {
+			node = child(node, s.charAt(i));
+			if (node < 0)
+				return false;
+		}
+		return accept[node];
+	}
+
+	/**
+	 * Reports every occurrence of every dictionary string in the given text,
+	 * including overlapping and nested ones. Occurrences are reported in order of
+	 * their end offsets, longest first for the same end offset.
+	 *
+	 * @param s       the text to search
+	 * @param handler receives the occurrences
+	 */
+	public void findAll(CharSequence s, MatchHandler handler) {
+		int node = 0;
+		int l = s.length();
+		for (int i = 0; i < l; i++) {
+			node = next(node, s.charAt(i));
+			for (int h = accept[node] != null ? node : output[node]; h >= 0; h = output[h])
+				handler.onMatch(i + 1 - depth[h], i + 1, accept[h]);
+		}
+	}
+
+	/**
+	 * Reports the leftmost-longest, non-overlapping occurrences of dictionary
+	 * strings in the given text, which are the matches that
+	 * {@link RunAutomatonMatcher#find()} finds with an automaton of the same
+	 * dictionary.
+	 * <p/>
+	 * The text is scanned backwards, a block at a time, with the automaton of the
+	 * reversed dictionary (built on first use), which gives the longest string
+	 * starting at each offset. The matches are then taken greedily from the
+	 * left, so the time is linear in the length of the text.
+	 *
+	 * @param s       the text to search
+	 * @param handler receives the occurrences
+	 */
+	public void findLongest(CharSequence s, MatchHandler handler) {
+		DictionaryAutomaton r = getReverse();
+		int l = s.length();
+		int block = Math.max(BLOCK_SIZE, maxDepth);
+		int[] longest = new int[Math.min(l, block)]; // node of the longest string starting at each offset of the block
+		for (int begin = 0, p = 0; begin < l; begin += block) {
+			int end = Math.min(l, begin + block);
+			int from = Math.max(p, begin);
+			if (from >= end)
+				continue;
+			// strings starting before end end before end + maxDepth
+			int node = 0;
+			for (int i = Math.min(l, end + maxDepth - 1) - 1; i >= from; i--) {
+				node = r.next(node, s.charAt(i));
+				if (i < end)
+					longest[i - begin] = r.accept[node] != null ? node : r.output[node];
+			}
+			while (p < end) {
+				int h = longest[p - begin];
+				if (h >= 0) {
+					handler.onMatch(p, p + r.depth[h], r.accept[h]);
+					p += r.depth[h];
+				} else
+					p++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the automaton of the reversed dictionary strings, building it on
+	 * first use.
+	 */
+	private DictionaryAutomaton getReverse() {
+		DictionaryAutomaton r = reverse;
+		if (r == null) {
+			int size = accept.length;
+			int[] parent = new int[size];
+			for (int n = 0; n < size; n++)
+				for (int v = firstChild[n]; v < firstChild[n + 1]; v++)
+					parent[v] = n;
+			// walking up from a node spells its string reversed
+			String[] strings = new String[size];
+			Object[] accepts = new Object[size];
+			int count = 0;
+			int max = 0;
+			StringBuilder b = new StringBuilder();
+			for (int n = 1; n < size; n++)
+				if (accept[n] != null) {
+					b.setLength(0);
+					for (int v = n; v != 0; v = parent[v])
+						b.append(labels[v]);
+					strings[count] = b.toString();
+					accepts[count++] = accept[n];
+					max = Math.max(max, depth[n]);
+				}
+			Integer[] order = new Integer[count];
+			for (int i = 0; i < count; i++)
+				order[i] = i;
+			final String[] reversed = strings;
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer x, Integer y) {
+					return StringUnionOperations.LEXICOGRAPHIC_ORDER.compare(reversed[x], reversed[y]);
+				}
+			});
+			StringUnionOperations builder = new StringUnionOperations();
+			for (int i = 0; i < count; i++)
+				builder.add(accepts[order[i]], strings[order[i]]);
+			r = builder.completeDictionary();
+			maxDepth = max;
+			reverse = r;
+		}
+		return r;
+	}
+}
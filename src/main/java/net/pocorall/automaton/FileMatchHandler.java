@@ -0,0 +1,19 @@
+package net.pocorall.automaton;
+
+/**
+ * Receives the matches reported by a scan over a file, with offsets that may
+ * exceed the range of an <code>int</code>.
+ *
+ * @see FileScanner#scan(java.io.File, FileMatchHandler)
+ */
+public interface FileMatchHandler {
+
+	/**
+	 * Called for each match.
+	 *
+	 * @param start  offset of the first byte of the match
+	 * @param end    offset after the last byte of the match
+	 * @param accept accept object of the match
+	 */
+	void onMatch(long start, long end, Object accept);
+}
@@ -0,0 +1,235 @@
+package net.pocorall.automaton;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Searches a UTF-8 file for the matches of a {@link ByteRunAutomaton} using
+ * several threads.
+ * <p/>
+ * The file is memory-mapped and split into chunks that are searched in
+ * parallel, each from its first byte as if no match of an earlier chunk ran
+ * into it. The chunks are then stitched in order: where the last match of the
+ * earlier chunks ends inside a chunk, the chunk is searched again from that
+ * offset until the search joins one of its own matches, after which its
+ * matches are taken as found. A match may run past the end of its chunk, so
+ * this works for patterns of any length, and the matches are exactly those
+ * that {@link ByteRunAutomatonMatcher#find()} finds in the whole file. Only a
+ * few chunks are submitted ahead of the one being stitched, so the memory and
+ * address space used do not grow with the size of the file.
+ * <p/>
+ * A match may be at most 2GB long, the largest region that can be mapped.
+ */
+public class FileScanner {
+
+	/**
+	 * Default chunk size in bytes.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+
+	private final ByteRunAutomaton automaton;
+	private final ExecutorService executor;
+	private final int chunkSize;
+	private final int maxPendingChunks;
+
+	/**
+	 * Constructs a new <code>FileScanner</code> with the default chunk size.
+	 *
+	 * @param automaton the automaton to search with
+	 * @param executor  runs the searches of the chunks
+	 */
+	public FileScanner(ByteRunAutomaton automaton, ExecutorService executor) {
+		this(automaton, executor, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructs a new <code>FileScanner</code> that keeps as many chunks pending
+	 * as there are processors, plus one.
+	 *
+	 * @param automaton the automaton to search with
+	 * @param executor  runs the searches of the chunks
+	 * @param chunkSize number of bytes searched by one task
+	 */
+	public FileScanner(ByteRunAutomaton automaton, ExecutorService executor, int chunkSize) {
+		this(automaton, executor, chunkSize, Runtime.getRuntime().availableProcessors() + 1);
+	}
+
+	/**
+	 * Constructs a new <code>FileScanner</code>.
+	 *
+	 * @param automaton        the automaton to search with
+	 * @param executor         runs the searches of the chunks
+	 * @param chunkSize        number of bytes searched by one task
+	 * @param maxPendingChunks number of chunks submitted to the executor and not
+	 *                         yet reported, about the number of threads plus one
+	 */
+	public FileScanner(ByteRunAutomaton automaton, ExecutorService executor, int chunkSize, int maxPendingChunks) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize must be positive");
+		if (maxPendingChunks <= 0)
+			throw new IllegalArgumentException("maxPendingChunks must be positive");
+		this.automaton = automaton;
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+		this.maxPendingChunks = maxPendingChunks;
+	}
+
+	/**
+	 * Reports the leftmost-longest, non-overlapping matches in the given file.
+	 * The handler is called from the calling thread, in order of the offsets.
+	 *
+	 * @param file    the file to search
+	 * @param handler receives the matches
+	 * @throws IOException if the file cannot be read
+	 */
+	public void scan(File file, FileMatchHandler handler) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			long chunks = Math.max((size + chunkSize - 1) / chunkSize, 1);
+			long submitted = 0;
+			// the chunks being searched or waiting to be stitched, in order
+			ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+			long next = 0; // where the search for the next match starts
+			try {
+				do {
+					while (submitted < chunks && pending.size() < maxPendingChunks) {
+						long offset = submitted++ * chunkSize;
+						pending.add(executor.submit(new Chunk(channel, offset, Math.min(size, offset + chunkSize), size)));
+					}
+					next = pending.remove().get().stitch(next, handler);
+				} while (!pending.isEmpty() || submitted < chunks);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new RuntimeException(e.getCause());
+			} finally {
+				for (Future<Chunk> f : pending)
+					f.cancel(false);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * A chunk of the file and the matches found in it.
+	 */
+	private class Chunk implements Callable<Chunk> {
+
+		final FileChannel channel;
+		final long offset; // offset of the chunk in the file
+		final int end; // end of the chunk, relative to offset
+		final boolean last;
+		final long fileSize;
+		MappedByteBuffer bytes; // from offset to the end of the file, at most 2GB
+
+		// the matches found searching from the start of the chunk, relative to offset
+		int count;
+		int[] begins = new int[16]; // where the search for each match started
+		int[] starts = new int[16];
+		int[] ends = new int[16];
+		Object[] accepts = new Object[16];
+		int next; // where the search after the last match started
+
+		Chunk(FileChannel channel, long offset, long end, long fileSize) {
+			this.channel = channel;
+			this.offset = offset;
+			this.end = (int) (end - offset);
+			this.last = end == fileSize;
+			this.fileSize = fileSize;
+		}
+
+		public Chunk call() throws IOException {
+			bytes = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(fileSize - offset, Integer.MAX_VALUE));
+			int[] match = new int[2];
+			int begin = 0;
+			while (true) {
+				Object accept = find(begin, match);
+				if (accept == null)
+					break;
+				if (count == starts.length)
+					grow();
+				begins[count] = begin;
+				starts[count] = match[0];
+				ends[count] = match[1];
+				accepts[count] = accept;
+				count++;
+				begin = ByteRunAutomaton.nextBegin(match);
+			}
+			next = begin;
+			return this;
+		}
+
+		/**
+		 * Finds the first match starting in this chunk at or after <code>begin</code>.
+		 */
+		Object find(int begin, int[] match) {
+			return automaton.find(bytes, begin, last ? end : end - 1, bytes.limit(), match);
+		}
+
+		private void grow() {
+			int n = count * 2;
+			int[] a = new int[n];
+			System.arraycopy(begins, 0, a, 0, count);
+			begins = a;
+			a = new int[n];
+			System.arraycopy(starts, 0, a, 0, count);
+			starts = a;
+			a = new int[n];
+			System.arraycopy(ends, 0, a, 0, count);
+			ends = a;
+			Object[] o = new Object[n];
+			System.arraycopy(accepts, 0, o, 0, count);
+			accepts = o;
+		}
+
+		/**
+		 * Reports the matches of this chunk given the offset where the search
+		 * for the next match really starts, and returns where the search after
+		 * the last match of this chunk starts.
+		 */
+		long stitch(long from, FileMatchHandler handler) {
+			try {
+				// no match starts between an earlier search and this chunk, so from may be moved up to it
+				long r = Math.max(from - offset, 0);
+				if (r > end)
+					return from;
+				int b = (int) r;
+				int[] match = new int[2];
+				int k = 0;
+				while (true) {
+					// the search from b joins the search of match k if that started at or before b and found a match after it
+					while (k < count && starts[k] < b)
+						k++;
+					if (k < count ? begins[k] <= b : next <= b)
+						break;
+					Object accept = find(b, match);
+					if (accept == null)
+						return offset + b;
+					handler.onMatch(offset + match[0], offset + match[1], accept);
+					b = ByteRunAutomaton.nextBegin(match);
+				}
+				for (; k < count; k++) {
+					handler.onMatch(offset + starts[k], offset + ends[k], accepts[k]);
+					b = ends[k] > starts[k] ? ends[k] : ends[k] + 1;
+				}
+				return offset + b;
+			} finally {
+				bytes = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package net.pocorall.automaton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Minimal deterministic automaton of a set of strings, each with an accept
+ * object, that stays minimal as strings are added and removed in any order.
+ * <p/>
+ * Unlike {@link StringUnionOperations}, which needs its input sorted and
+ * cannot change after it is complete, strings can be added and removed at any
+ * time, and {@link #toRunAutomaton()} publishes a snapshot. As in the
+ * incremental algorithms of Daciuk et al. and Carrasco and Forcada, each
+ * state is kept in a register by its accept object and its transitions, so
+ * equivalent states are shared. An update rebuilds only the states on the
+ * path of its string, replacing or registering them from the end of the path
+ * back to the root, and states no longer used are dropped from the register by
+ * reference counting.
+ * <p/>
+ * An <code>IncrementalStringUnion</code> is not thread safe; the automata it
+ * publishes are independent of it.
+ */
+public class IncrementalStringUnion {
+
+	/**
+	 * State of the automaton, immutable once registered.
+	 */
+	private static final class Node {
+
+		final Object accept;
+		final char[] labels; // sorted
+		final Node[] children;
+		final int hash;
+		int refs; // number of transitions (and the root) leading to this node
+
+		Node(Object accept, char[] labels, Node[] children) {
+			this.accept = accept;
+			this.labels = labels;
+			this.children = children;
+			int h = accept == null ? 0 : accept.hashCode();
+			for (int i = 0; i < labels.length; i++)
+				h = h * 31 + labels[i] * 17 + System.identityHashCode(children[i]);
+			hash = h;
+		}
+
+		Node child(char c) {
+			int i = Arrays.binarySearch(labels, c);
+			return i >= 0 ? children[i] : null;
+		}
+
+		/**
+		 * Two nodes are equal if they have equal accept objects, the same labels,
+		 * and the same children, which are registered and so equal only if they
+		 * are the same node.
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			Node other = (Node) obj;
+			if (hash != other.hash || (accept == null ? other.accept != null : !accept.equals(other.accept))
+					|| !Arrays.equals(labels, other.labels))
+				return false;
+			for (int i = 0; i < children.length; i++)
+				if (children[i] != other.children[i])
+					return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final char[] NO_LABELS = new char[0];
+	private static final Node[] NO_NODES = new Node[0];
+
+	private final HashMap<Node, Node> register = new HashMap<Node, Node>();
+	private Node root; // null if there are no strings
+	private int size;
+
+	/**
+	 * Adds the given string with the given accept object, replacing the accept
+	 * object if the string is already present.
+	 *
+	 * @param acceptObj accept object, not null
+	 * @param s         the string
+	 * @return the previous accept object of the string, null if it was not present
+	 */
+	public Object add(Object acceptObj, CharSequence s) {
+		if (acceptObj == null)
+			throw new IllegalArgumentException("acceptObj must not be null");
+		return update(s, acceptObj);
+	}
+
+	/**
+	 * Removes the given string.
+	 *
+	 * @param s the string
+	 * @return the accept object of the string, null if it was not present
+	 */
+	public Object remove(CharSequence s) {
+		return update(s, null);
+	}
+
+	/**
+	 * Returns the accept object of the given string, null if it is not present.
+	 */
+	public Object get(CharSequence s) {
+		Node n = root;
+		for (int i = 0, l = s.length(); i < l && n != null; i++)
+			n = n.child(s.charAt(i));
+		return n == null ? null : n.accept;
+	}
+
+	/**
+	 * Returns the number of strings.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of states of the minimal automaton (0 if there are no
+	 * strings).
+	 */
+	public int getNumberOfStates() {
+		return register.size();
+	}
+
+	/**
+	 * Sets the accept object of the given string, removing it if the accept
+	 * object is null, and returns the previous one.
+	 */
+	private Object update(CharSequence s, Object acceptObj) {
+		int l = s.length();
+		Node[] path = new Node[l + 1]; // the existing nodes on the path of s, null past its end
+		path[0] = root;
+		for (int i = 0; i < l && path[i] != null; i++)
+			path[i + 1] = path[i].child(s.charAt(i));
+		Object previous = path[l] == null ? null : path[l].accept;
+		if (previous == null ? acceptObj == null : previous.equals(acceptObj))
+			return previous;
+		// replace or register the nodes from the end of the path back to the root
+		Node n = path[l];
+		n = intern(acceptObj, n == null ? NO_LABELS : n.labels, n == null ? NO_NODES : n.children);
+		for (int i = l - 1; i >= 0; i--)
+			n = withChild(path[i], s.charAt(i), n);
+		acquire(n);
+		release(root);
+		root = n;
+		if (previous == null)
+			size++;
+		else if (acceptObj == null)
+			size--;
+		return previous;
+	}
+
+	/**
+	 * Returns the registered node like the given one, but with its transition
+	 * on the given char leading to the given child (none if null).
+	 */
+	private Node withChild(Node n, char c, Node child) {
+		char[] labels = n == null ? NO_LABELS : n.labels;
+		Node[] children = n == null ? NO_NODES : n.children;
+		int i = Arrays.binarySearch(labels, c);
+		char[] l;
+		Node[] ch;
+		if (i >= 0 && child != null) {
+			l = labels;
+			ch = children.clone();
+			ch[i] = child;
+		} else if (i >= 0) {
+			l = new char[labels.length - 1];
+			ch = new Node[labels.length - 1];
+			System.arraycopy(labels, 0, l, 0, i);
+			System.arraycopy(labels, i + 1, l, i, l.length - i);
+			System.arraycopy(children, 0, ch, 0, i);
+			System.arraycopy(children, i + 1, ch, i, ch.length - i);
+		} else if (child != null) {
+			i = -i - 1;
+			l = new char[labels.length + 1];
+			ch = new Node[labels.length + 1];
+			System.arraycopy(labels, 0, l, 0, i);
+			System.arraycopy(labels, i, l, i + 1, labels.length - i);
+			System.arraycopy(children, 0, ch, 0, i);
+			System.arraycopy(children, i, ch, i + 1, children.length - i);
+			l[i] = c;
+			ch[i] = child;
+		} else
+			return n;
+		return intern(n == null ? null : n.accept, l, ch);
+	}
+
+	/**
+	 * Returns the registered node with the given accept object and transitions,
+	 * registering a new one if there is none, or null if the node accepts
+	 * nothing.
+	 */
+	private Node intern(Object accept, char[] labels, Node[] children) {
+		if (accept == null && labels.length == 0)
+			return null;
+		Node n = new Node(accept, labels, children);
+		Node r = register.get(n);
+		if (r != null)
+			return r;
+		register.put(n, n);
+		for (Node child : children)
+			acquire(child);
+		return n;
+	}
+
+	private static void acquire(Node n) {
+		if (n != null)
+			n.refs++;
+	}
+
+	/**
+	 * Drops a reference to the given node, unregistering it and releasing its
+	 * children if it is no longer used.
+	 */
+	private void release(Node n) {
+		ArrayList<Node> worklist = new ArrayList<Node>();
+		if (n != null)
+			worklist.add(n);
+		while (!worklist.isEmpty()) {
+			n = worklist.remove(worklist.size() - 1);
+			if (--n.refs == 0) {
+				register.remove(n);
+				for (Node child : n.children)
+					worklist.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Returns a new minimal deterministic automaton of the current strings.
+	 */
+	public DefaultAutomaton toAutomaton() {
+		DefaultAutomaton a = new DefaultAutomaton();
+		if (root != null)
+			a.setInitialState(convert(root, new IdentityHashMap<Node, State>()));
+		a.setDeterministic(true);
+		return a;
+	}
+
+	/**
+	 * Returns a new {@link RunAutomaton} of the current strings.
+	 */
+	public RunAutomaton toRunAutomaton() {
+		return new RunAutomaton(toAutomaton());
+	}
+
+	private static State convert(Node n, IdentityHashMap<Node, State> visited) {
+		State s = visited.get(n);
+		if (s != null)
+			return s;
+		s = new State();
+		s.accept = n.accept;
+		visited.put(n, s);
+		for (int i = 0; i < n.labels.length; i++)
+			s.addTransition(new Transition(n.labels[i], convert(n.children[i], visited)));
+		return s;
+	}
+}
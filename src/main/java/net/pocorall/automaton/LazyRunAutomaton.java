@@ -0,0 +1,366 @@
+package net.pocorall.automaton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Automaton that runs a nondeterministic automaton by building the states of
+ * the equivalent deterministic automaton on the fly, as the input reaches
+ * them.
+ * <p/>
+ * Unlike {@link RunAutomaton}, it never builds the whole deterministic
+ * automaton, which can have exponentially many states (as for
+ * <code>.*a.{20}</code>). The states built are cached, up to a given number;
+ * when the cache is full it is cleared. If the cache is cleared again before
+ * the states in it are used much, the input visits too many states to cache,
+ * and the automaton steps sets of states without caching them for a while.
+ * <p/>
+ * A <code>LazyRunAutomaton</code> is not thread safe.
+ */
+public class LazyRunAutomaton implements Automaton {
+
+	/**
+	 * Default maximum number of cached states.
+	 */
+	public static final int DEFAULT_MAX_STATES = 10000;
+
+	/**
+	 * A state of the deterministic automaton: a set of states of the
+	 * nondeterministic automaton.
+	 */
+	static final class DState {
+		final int[] set; // sorted state numbers
+		final Object accept;
+		final DState[] next; // successor for each char class, null if not built yet
+		final int hash;
+
+		DState(int[] set, Object accept, int classes) {
+			this.set = set;
+			this.accept = accept;
+			next = new DState[classes];
+			hash = Arrays.hashCode(set);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof DState && Arrays.equals(set, ((DState) obj).set);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	// the nondeterministic automaton, with transitions first[s] to first[s + 1] - 1 of each state s
+	private final int[] first;
+	private final char[] min;
+	private final char[] max;
+	private final int[] to;
+	private final Object[] accepts;
+	private final char[] points;
+	private final int[] latin1; // char class of each char below 256
+
+	private final int maxStates;
+	private final HashMap<DState, DState> cache = new HashMap<DState, DState>();
+	private DState initial;
+	final DState dead;
+
+	private long steps; // number of steps taken
+	private long flushed = Long.MIN_VALUE / 2; // steps at the last time the cache was cleared
+	private long uncachedUntil; // no states are cached until this many steps have been taken
+
+	private final int[] mark; // states added to the set being built, see successor()
+	private int generation;
+	private int[] buffer;
+
+	/**
+	 * Constructs a new <code>LazyRunAutomaton</code> with the default cache size.
+	 *
+	 * @param a an automaton, deterministic or not
+	 */
+	public LazyRunAutomaton(DefaultAutomaton a) {
+		this(a, DEFAULT_MAX_STATES);
+	}
+
+	/**
+	 * Constructs a new <code>LazyRunAutomaton</code>.
+	 *
+	 * @param a         an automaton, deterministic or not
+	 * @param maxStates maximum number of cached states
+	 */
+	public LazyRunAutomaton(DefaultAutomaton a, int maxStates) {
+		if (maxStates < 2)
+			throw new IllegalArgumentException("maxStates must be at least 2");
+		this.maxStates = maxStates;
+		a = a.cloneExpanded();
+		points = a.getStartPoints();
+		Set<State> states = a.getStates();
+		Transition[][] transitions = LinkedAutomaton.getSortedTransitions(states);
+		int n = states.size();
+		accepts = new Object[n];
+		for (State s : states)
+			accepts[s.number] = s.accept;
+		first = new int[n + 1];
+		for (int s = 0; s < n; s++)
+			first[s + 1] = first[s] + transitions[s].length;
+		min = new char[first[n]];
+		max = new char[first[n]];
+		to = new int[first[n]];
+		for (int s = 0; s < n; s++)
+			for (int k = 0; k < transitions[s].length; k++) {
+				Transition t = transitions[s][k];
+				min[first[s] + k] = t.min;
+				max[first[s] + k] = t.max;
+				to[first[s] + k] = t.to.number;
+			}
+		latin1 = new int[256];
+		for (int c = 0, i = 0; c < 256; c++) {
+			while (i + 1 < points.length && points[i + 1] <= c)
+				i++;
+			latin1[c] = i;
+		}
+		mark = new int[n];
+		buffer = new int[n];
+		dead = new DState(new int[0], null, points.length);
+		Arrays.fill(dead.next, dead);
+		initial = intern(new int[] {a.initial.number});
+	}
+
+	/**
+	 * Constructs a new <code>LazyRunAutomaton</code> that runs the same
+	 * automaton as the given one, sharing its arrays but not its cache.
+	 */
+	LazyRunAutomaton(LazyRunAutomaton a) {
+		maxStates = a.maxStates;
+		first = a.first;
+		min = a.min;
+		max = a.max;
+		to = a.to;
+		accepts = a.accepts;
+		points = a.points;
+		latin1 = a.latin1;
+		mark = new int[a.mark.length];
+		buffer = new int[a.buffer.length];
+		dead = new DState(new int[0], null, points.length);
+		Arrays.fill(dead.next, dead);
+		initial = intern(a.initial.set);
+	}
+
+	/**
+	 * Returns the char class of the given char.
+	 */
+	final int getCharClass(char c) {
+		if (c < 256)
+			return latin1[c];
+		int i = Arrays.binarySearch(points, c);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/**
+	 * Returns the initial state.
+	 */
+	final DState initial() {
+		return initial;
+	}
+
+	/**
+	 * Returns the state obtained by reading the given char from the given state,
+	 * <code>dead</code> if no state of the nondeterministic automaton is left.
+	 */
+	final DState step(DState d, char c) {
+		int cls = getCharClass(c);
+		DState n = d.next[cls];
+		steps++;
+		if (n == null) {
+			n = successor(d, cls);
+			if (n == dead)
+				d.next[cls] = n;
+			else if (steps >= uncachedUntil) {
+				n = intern(n.set);
+				d.next[cls] = n;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the cached state of the given set, adding it to the cache.
+	 */
+	private DState intern(int[] set) {
+		DState d = new DState(set, accept(set), points.length);
+		DState c = cache.get(d);
+		if (c != null)
+			return c;
+		if (cache.size() >= maxStates) {
+			// a full cache again soon after the last clearing means the input visits too many states
+			if (steps - flushed < (long) maxStates * 4)
+				uncachedUntil = steps + (long) maxStates * 16;
+			flushed = steps;
+			cache.clear();
+			initial = new DState(initial.set, initial.accept, points.length);
+			cache.put(initial, initial);
+			if (d.equals(initial))
+				return initial;
+		}
+		cache.put(d, d);
+		return d;
+	}
+
+	/**
+	 * Returns the accept objects of the given states, merged by the
+	 * {@link AcceptMerger} of {@link LinkedAutomaton} as determinization merges
+	 * them.
+	 */
+	private Object accept(int[] set) {
+		Object accept = null;
+		for (int s : set)
+			if (accepts[s] != null)
+				accept = accept == null ? accepts[s] : LinkedAutomaton.accept_merger.merge(accept, accepts[s]);
+		return accept;
+	}
+
+	/**
+	 * Returns the (uncached) set of states reached from the given set on the
+	 * given char class.
+	 */
+	private DState successor(DState d, int cls) {
+		char c = points[cls];
+		int g = ++generation;
+		if (g == 0) {
+			Arrays.fill(mark, 0);
+			g = generation = 1;
+		}
+		int count = 0;
+		for (int s : d.set)
+			for (int k = first[s]; k < first[s + 1] && min[k] <= c; k++)
+				if (c <= max[k] && mark[to[k]] != g) {
+					mark[to[k]] = g;
+					buffer[count++] = to[k];
+				}
+		if (count == 0)
+			return dead;
+		int[] set = new int[count];
+		System.arraycopy(buffer, 0, set, 0, count);
+		Arrays.sort(set);
+		return new DState(set, accept(set), points.length);
+	}
+
+	/**
+	 * Builds all states reachable from the initial state, unless there are more
+	 * than the maximum number of cached states.
+	 *
+	 * @return true if all states were built
+	 */
+	boolean explore() {
+		ArrayList<DState> worklist = new ArrayList<DState>();
+		worklist.add(initial);
+		for (int i = 0; i < worklist.size(); i++) {
+			DState d = worklist.get(i);
+			for (int c = 0; c < points.length; c++)
+				if (d.next[c] == null) {
+					DState n = successor(d, c);
+					if (n != dead) {
+						DState e = cache.get(n);
+						if (e == null) {
+							if (cache.size() >= maxStates)
+								return false;
+							cache.put(n, n);
+							worklist.add(n);
+							e = n;
+						}
+						n = e;
+					}
+					d.next[c] = n;
+				}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a new deterministic automaton with the states built by
+	 * {@link #explore()}, which must have returned true.
+	 */
+	DefaultAutomaton toAutomaton() {
+		IdentityHashMap<DState, State> states = new IdentityHashMap<DState, State>();
+		for (DState d : cache.values()) {
+			State s = new State();
+			s.accept = d.accept;
+			states.put(d, s);
+		}
+		for (DState d : cache.values()) {
+			State s = states.get(d);
+			for (int c = 0; c < points.length; c++)
+				if (d.next[c] != dead) {
+					char m = c + 1 < points.length ? (char) (points[c + 1] - 1) : Character.MAX_VALUE;
+					s.transitions.add(new Transition(points[c], m, states.get(d.next[c])));
+				}
+		}
+		DefaultAutomaton a = new DefaultAutomaton();
+		a.initial = states.get(initial);
+		a.deterministic = true;
+		a.reduce();
+		return a;
+	}
+
+	/**
+	 * Returns the number of cached states.
+	 */
+	public int getCachedStates() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the accept object if the given string is accepted by this
+	 * automaton, null or false otherwise.
+	 */
+	public Object run(String s) {
+		DState d = initial;
+		for (int i = 0, l = s.length(); i < l; i++) {
+			d = step(d, s.charAt(i));
+			if (d == dead)
+				return false;
+		}
+		return d.accept;
+	}
+
+	/**
+	 * Finds the longest match in the given input that starts at
+	 * <code>begin</code>.
+	 *
+	 * @param match receives the start and end of the match
+	 * @return the accept object of the match, null if there is none
+	 */
+	Object match(CharSequence s, int begin, int[] match) {
+		DState d = initial;
+		Object accept = d.accept;
+		int end = accept != null ? begin : -1;
+		for (int i = begin, l = s.length(); i < l; i++) {
+			d = step(d, s.charAt(i));
+			if (d == dead)
+				break;
+			if (d.accept != null) {
+				accept = d.accept;
+				end = i + 1;
+			}
+		}
+		if (end < 0)
+			return null;
+		match[0] = begin;
+		match[1] = end;
+		return accept;
+	}
+
+	/**
+	 * Creates a new matcher for the given input.
+	 *
+	 * @param s the CharSequence to search
+	 * @return A new matcher for the given input
+	 */
+	public LazyRunAutomatonMatcher newMatcher(CharSequence s) {
+		return new LazyRunAutomatonMatcher(s, this);
+	}
+}
@@ -0,0 +1,69 @@
+package net.pocorall.automaton;
+
+/**
+ * Finds the leftmost-longest matches of a {@link LazyRunAutomaton} in a
+ * character sequence, as {@link RunAutomatonMatcher#find()} finds them.
+ *
+ * @see LazyRunAutomaton#newMatcher(CharSequence)
+ */
+public class LazyRunAutomatonMatcher {
+
+	private final CharSequence chars;
+	private final LazyRunAutomaton automaton;
+
+	private final int[] match = {-1, -1}; // start and end of the last match
+	private int next; // where the next find starts, -1 if there are no more matches
+
+	LazyRunAutomatonMatcher(CharSequence chars, LazyRunAutomaton automaton) {
+		this.chars = chars;
+		this.automaton = automaton;
+	}
+
+	/**
+	 * Finds the next leftmost-longest match.
+	 *
+	 * @return the accept object of the match, null if there are no more matches
+	 */
+	public Object find() {
+		for (int l = chars.length(); next >= 0 && next <= l; next++) {
+			Object accept = automaton.match(chars, next, match);
+			if (accept != null) {
+				next = match[1] > match[0] ? match[1] : match[1] + 1;
+				return accept;
+			}
+		}
+		match[0] = match[1] = next = -1;
+		return null;
+	}
+
+	/**
+	 * Returns the offset of the first character of the last match.
+	 *
+	 * @throws IllegalStateException if the last <code>find</code> found no match
+	 */
+	public int start() {
+		if (match[0] < 0)
+			throw new IllegalStateException("There was no available match.");
+		return match[0];
+	}
+
+	/**
+	 * Returns the offset after the last character of the last match.
+	 *
+	 * @throws IllegalStateException if the last <code>find</code> found no match
+	 */
+	public int end() {
+		if (match[1] < 0)
+			throw new IllegalStateException("There was no available match.");
+		return match[1];
+	}
+
+	/**
+	 * Returns the subsequence of the input found by the last match.
+	 *
+	 * @throws IllegalStateException if the last <code>find</code> found no match
+	 */
+	public String group() {
+		return chars.subSequence(start(), end()).toString();
+	}
+}
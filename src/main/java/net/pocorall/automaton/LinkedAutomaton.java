@@ -49,6 +49,13 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 	 */
 	int hash_code;
 
+	/**
+	 * Array form used by {@link #run(String)} if nondeterministic, built on
+	 * demand. Cleared by {@link #clearHashCode()}, which every operation that
+	 * changes the states of this automaton must call.
+	 */
+	transient volatile CompiledNfa compiled;
+
 
 	/**
 	 * Constructs a new automaton that accepts the empty language.
@@ -102,8 +109,15 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 	 * Returns sorted array of all interval start points.
 	 */
 	char[] getStartPoints() {
+		return getStartPoints(getStates());
+	}
+
+	/**
+	 * Returns sorted array of all interval start points of the given states.
+	 */
+	static char[] getStartPoints(Set<State> states) {
 		Set<Character> pointset = new HashSet<Character>();
-		for (State s : getStates()) {
+		for (State s : states) {
 			pointset.add(Character.MIN_VALUE);
 			for (Transition t : s.transitions) {
 				pointset.add(t.min);
@@ -132,6 +146,9 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 			case MINIMIZE_BRZOZOWSKI:
 				MinimizationOperations.minimizeBrzozowski(this);
 				break;
+			case MINIMIZE_VALMARI:
+				MinimizationOperations.minimizeValmari(this);
+				break;
 			default:
 				MinimizationOperations.minimizeHopcroft(this);
 		}
@@ -156,6 +173,7 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 			if (maxi <= Character.MAX_VALUE)
 				p.transitions.add(new Transition((char) maxi, Character.MAX_VALUE, s));
 		}
+		clearHashCode();
 	}
 
 	/**
@@ -163,6 +181,7 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 	 */
 	void clearHashCode() {
 		hash_code = 0;
+		compiled = null;
 	}
 
 	/**
@@ -293,6 +312,7 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 	 */
 	public void setInitialState(State s) {
 		initial = s;
+		compiled = null;
 	}
 
 	/**
@@ -302,6 +322,7 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 	public LinkedAutomaton clone() {
 		try {
 			LinkedAutomaton a = (LinkedAutomaton) super.clone();
+			a.compiled = null;
 			HashMap<State, State> m = new HashMap<State, State>();
 			Set<State> states = getStates();
 			for (State s : states)
@@ -326,6 +347,10 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 	 * Complexity: linear in the length of the string.
 	 * <p/>
 	 * <b>Note:</b> for full performance, use the {@link RunAutomaton} class.
+	 * A nondeterministic automaton is run over an array form built by the first
+	 * run, so its states should not be modified directly afterwards. The accept
+	 * objects of all accepting states it reaches are merged by the accept merger
+	 * (see {@link #setAcceptMerger(AcceptMerger)}).
 	 */
 	public Object run(String s) {
 		if (deterministic) {
@@ -338,40 +363,10 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 			}
 			return p.accept;
 		} else {
-			Set<State> states = getStates();
-			setStateNumbers(states);
-			LinkedList<State> pp = new LinkedList<State>();
-			LinkedList<State> pp_other = new LinkedList<State>();
-			BitSet bb = new BitSet(states.size());
-			BitSet bb_other = new BitSet(states.size());
-			pp.add(initial);
-			ArrayList<State> dest = new ArrayList<State>();
-			Object accept = initial.accept;
-			for (int i = 0; i < s.length(); i++) {
-				char c = s.charAt(i);
-				accept = false;
-				pp_other.clear();
-				bb_other.clear();
-				for (State p : pp) {
-					dest.clear();
-					p.step(c, dest);
-					for (State q : dest) {
-						if (q.accept != null)
-							accept = q.accept;
-						if (!bb_other.get(q.number)) {
-							bb_other.set(q.number);
-							pp_other.add(q);
-						}
-					}
-				}
-				LinkedList<State> tp = pp;
-				pp = pp_other;
-				pp_other = tp;
-				BitSet tb = bb;
-				bb = bb_other;
-				bb_other = tb;
-			}
-			return accept;
+			CompiledNfa c = compiled;
+			if (c == null)
+				compiled = c = new CompiledNfa(this);
+			return c.run(s);
 		}
 	}
 
@@ -485,10 +480,22 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 	 * @see #setMinimization(int)
 	 */
 	public static final int MINIMIZE_HOPCROFT = 2;
+	/**
+	 * Minimize using Valmari and Lehtinen's O(n + m log m) algorithm on flat arrays.
+	 * This needs far less memory than Hopcroft's implementation for large automata
+	 * over many start points.
+	 *
+	 * @see #setMinimization(int)
+	 */
+	public static final int MINIMIZE_VALMARI = 3;
 	/**
 	 * Selects minimization algorithm (default: <code>MINIMIZE_HOPCROFT</code>).
 	 */
 	static int minimization = MINIMIZE_HOPCROFT;
+	/**
+	 * Combines accept objects of merged states (default: <code>AcceptMergers.DEFAULT</code>).
+	 */
+	static AcceptMerger accept_merger = AcceptMergers.DEFAULT;
 	/**
 	 * Minimize always flag.
 	 */
@@ -511,6 +518,27 @@ public class LinkedAutomaton implements Serializable, Cloneable, Automaton {
 		minimization = algorithm;
 	}
 
+	/**
+	 * Selects how determinization, intersection and minimization combine the
+	 * accept objects of states that become one state
+	 * (default: <code>AcceptMergers.DEFAULT</code>).
+	 *
+	 * @param merger accept object merger
+	 * @see AcceptMergers
+	 */
+	static public void setAcceptMerger(AcceptMerger merger) {
+		accept_merger = merger;
+	}
+
+	/**
+	 * Returns the accept object merger.
+	 *
+	 * @see #setAcceptMerger(AcceptMerger)
+	 */
+	static public AcceptMerger getAcceptMerger() {
+		return accept_merger;
+	}
+
 	/**
 	 * Sets or resets minimize always flag.
 	 * If this flag is set, then {@link #minimize()} will automatically
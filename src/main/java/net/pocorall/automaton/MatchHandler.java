@@ -0,0 +1,20 @@
+package net.pocorall.automaton;
+
+/**
+ * Receives the matches reported by a scan over a character sequence.
+ * Matches are reported as offsets only, so a scan allocates nothing per match.
+ *
+ * @see RunAutomaton#findAll(CharSequence, MatchHandler)
+ * @see DictionaryAutomaton#findAll(CharSequence, MatchHandler)
+ */
+public interface MatchHandler {
+
+	/**
+	 * Called for each match.
+	 *
+	 * @param start  offset of the first char of the match
+	 * @param end    offset after the last char of the match
+	 * @param accept accept object of the match
+	 */
+	void onMatch(int start, int end, Object accept);
+}
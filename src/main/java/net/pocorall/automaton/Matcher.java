@@ -0,0 +1,279 @@
+package net.pocorall.automaton;
+
+/**
+ * Runs and searches with an automaton, choosing the engine from the shape of
+ * the automaton:
+ * <ul>
+ * <li>{@link Engine#LITERAL} if it accepts a single string (see
+ * {@link DefaultAutomaton#getSingleton()}), searched with <code>indexOf</code>,</li>
+ * <li>{@link Engine#DFA}, a {@link RunAutomaton}, if it is deterministic, or
+ * if its deterministic automaton has at most <code>stateBudget</code> states,</li>
+ * <li>{@link Engine#BIT_PARALLEL}, a {@link BitParallelAutomaton}, if it is a
+ * small nondeterministic automaton,</li>
+ * <li>{@link Engine#LAZY_DFA}, a {@link LazyRunAutomaton} caching
+ * <code>stateBudget</code> states, otherwise.</li>
+ * </ul>
+ * If all accepted strings start with the same literal (see
+ * {@link SpecialOperations#getCommonPrefix(DefaultAutomaton)}), searches only
+ * run the engine where the literal is found. Otherwise, searches with the
+ * bit-parallel and lazy engines first run <code>.*</code> followed by the
+ * reverse automaton backwards over the input, as
+ * {@link RunAutomaton#newLinearMatcher(CharSequence)} does, to mark the
+ * offsets where a match starts, and run the engine only from those. The
+ * reverse automaton builds its states lazily, caching at most
+ * <code>stateBudget</code> of them across searches.
+ * {@link #find(CharSequence, int, int[])} keeps the marks of the last input,
+ * and marks again only for another input object, a different length or a
+ * smaller <code>from</code>, so a loop over the matches of an input, like
+ * {@link #scan(CharSequence, MatchHandler)}, is linear in the input (apart
+ * from the chars each match reads past its end). An input must therefore not
+ * be modified between calls of <code>find</code> with the same object.
+ * <p/>
+ * A <code>Matcher</code> with a lazy engine, or that searches with a reverse
+ * automaton, is not thread safe.
+ */
+public class Matcher implements Automaton {
+
+	/**
+	 * The engines a <code>Matcher</code> can use.
+	 */
+	public enum Engine {
+		LITERAL, BIT_PARALLEL, DFA, LAZY_DFA
+	}
+
+	/**
+	 * Default maximum number of deterministic states built.
+	 */
+	public static final int DEFAULT_STATE_BUDGET = LazyRunAutomaton.DEFAULT_MAX_STATES;
+
+	private final Engine engine;
+	private final String literal; // the accepted string, or the common prefix of the accepted strings
+	private final Object literalAccept; // accept object of the accepted string, if there is only one
+	private final RunAutomaton dfa;
+	private final BitParallelAutomaton bitParallel;
+	private final LazyRunAutomaton lazy;
+	private final LazyRunAutomaton reverse; // .* followed by the reverse automaton, null if unused
+
+	// marks of the last input searched by find, see markStarts()
+	private CharSequence marked;
+	private int markedLength;
+	private int markedFrom;
+	private long[] marks;
+
+	/**
+	 * Constructs a new <code>Matcher</code> with the default state budget.
+	 *
+	 * @param a an automaton, deterministic or not
+	 */
+	public Matcher(DefaultAutomaton a) {
+		this(a, DEFAULT_STATE_BUDGET);
+	}
+
+	/**
+	 * Constructs a new <code>Matcher</code>. The given automaton is not
+	 * modified.
+	 *
+	 * @param a           an automaton, deterministic or not
+	 * @param stateBudget maximum number of deterministic states built
+	 */
+	public Matcher(DefaultAutomaton a, int stateBudget) {
+		this(a, stateBudget, null);
+	}
+
+	/**
+	 * Constructs a new <code>Matcher</code> with the given engine, or the one
+	 * chosen for the automaton if it is null.
+	 */
+	Matcher(DefaultAutomaton a, int stateBudget, Engine engine) {
+		RunAutomaton dfa = null;
+		BitParallelAutomaton bitParallel = null;
+		LazyRunAutomaton lazy = null;
+		LazyRunAutomaton reverse = null;
+		if (engine == null && a.isSingleton() || engine == Engine.LITERAL) {
+			if (!a.isSingleton())
+				throw new IllegalArgumentException("Not a single string");
+			this.engine = Engine.LITERAL;
+			literal = a.singleton;
+			literalAccept = a.run(literal);
+		} else {
+			literal = SpecialOperations.getCommonPrefix(a);
+			literalAccept = null;
+			if (engine == Engine.DFA || engine == null && a.isDeterministic()) {
+				engine = Engine.DFA;
+				dfa = new RunAutomaton(a.isDeterministic() ? a : a.clone());
+			} else if (engine == Engine.BIT_PARALLEL
+					|| engine == null && a.getNumberOfTransitions() < BitParallelAutomaton.MAX_POSITIONS) {
+				engine = Engine.BIT_PARALLEL;
+				bitParallel = new BitParallelAutomaton(a);
+			} else {
+				lazy = new LazyRunAutomaton(a, stateBudget);
+				if (engine == null && lazy.explore()) {
+					engine = Engine.DFA;
+					dfa = new RunAutomaton(lazy.toAutomaton());
+					lazy = null;
+				} else
+					engine = Engine.LAZY_DFA;
+			}
+			this.engine = engine;
+			if (engine != Engine.DFA && literal.length() == 0) {
+				DefaultAutomaton r = a.clone();
+				SpecialOperations.reverse(r);
+				reverse = new LazyRunAutomaton(BasicAutomataFactory.makeAnyString().concatenate(r), stateBudget);
+			}
+		}
+		this.dfa = dfa;
+		this.bitParallel = bitParallel;
+		this.lazy = lazy;
+		this.reverse = reverse;
+	}
+
+	/**
+	 * Returns the engine chosen for the automaton.
+	 */
+	public Engine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Returns the accept object if the given string is accepted by this
+	 * automaton, null or false otherwise.
+	 */
+	public Object run(String s) {
+		switch (engine) {
+			case LITERAL:
+				if (s.equals(literal))
+					return literalAccept;
+				return literal.startsWith(s) ? null : false;
+			case DFA:
+				return dfa.run(s);
+			case BIT_PARALLEL:
+				return bitParallel.run(s);
+			default:
+				return lazy.run(s);
+		}
+	}
+
+	/**
+	 * Finds the leftmost-longest match in the given input that starts at or
+	 * after <code>from</code>.
+	 *
+	 * @param s     the input
+	 * @param from  offset where the search starts
+	 * @param match receives the start and end of the match, or -1 if there is none
+	 * @return the accept object of the match, null if there is none
+	 */
+	public Object find(CharSequence s, int from, int[] match) {
+		if (reverse != null) {
+			if (s != marked || s.length() != markedLength || from < markedFrom) {
+				marks = markStarts(s, from);
+				marked = s;
+				markedLength = s.length();
+				markedFrom = from;
+			}
+			return find(s, marks, markedFrom, from, match);
+		}
+		int l = s.length();
+		for (int begin = from; begin <= l; begin++) {
+			if (literal.length() > 0) {
+				begin = indexOf(s, literal, begin);
+				if (begin < 0)
+					break;
+			} else if (engine == Engine.DFA)
+				begin = dfa.skip(s, begin, l);
+			Object accept;
+			switch (engine) {
+				case LITERAL:
+					match[0] = begin;
+					match[1] = begin + literal.length();
+					return literalAccept;
+				case DFA:
+					accept = dfa.match(s, begin, match);
+					break;
+				case BIT_PARALLEL:
+					accept = bitParallel.match(s, begin, match);
+					break;
+				default:
+					accept = lazy.match(s, begin, match);
+			}
+			if (accept != null)
+				return accept;
+		}
+		match[0] = match[1] = -1;
+		return null;
+	}
+
+	/**
+	 * Reports the leftmost-longest, non-overlapping matches in the given input,
+	 * as {@link RunAutomatonMatcher#find()} finds them.
+	 *
+	 * @param s       the input
+	 * @param handler receives the matches
+	 */
+	public void scan(CharSequence s, MatchHandler handler) {
+		long[] starts = reverse != null ? markStarts(s, 0) : null;
+		int[] match = new int[2];
+		for (int begin = 0; ; ) {
+			Object accept = starts != null ? find(s, starts, 0, begin, match) : find(s, begin, match);
+			if (accept == null)
+				return;
+			handler.onMatch(match[0], match[1], accept);
+			begin = match[1] > match[0] ? match[1] : match[1] + 1;
+		}
+	}
+
+	/**
+	 * Runs the reverse automaton backwards over the input down to
+	 * <code>from</code> and returns the offsets where a match starts, as bits
+	 * relative to <code>from</code>.
+	 */
+	private long[] markStarts(CharSequence s, int from) {
+		final LazyRunAutomaton r = reverse;
+		int l = s.length();
+		long[] bits = new long[(Math.max(l - from, 0) >>> 6) + 1];
+		LazyRunAutomaton.DState d = r.initial();
+		for (int i = l; i >= from; i--) {
+			if (d.accept != null)
+				bits[(i - from) >>> 6] |= 1L << (i - from);
+			if (i > from)
+				d = r.step(d, s.charAt(i - 1));
+		}
+		return bits;
+	}
+
+	/**
+	 * Finds the leftmost-longest match that starts at or after
+	 * <code>from</code>, at one of the given marked offsets.
+	 *
+	 * @param starts offsets where a match starts, as bits relative to <code>base</code>
+	 */
+	private Object find(CharSequence s, long[] starts, int base, int from, int[] match) {
+		int w = (from - base) >>> 6;
+		long word = w < starts.length ? starts[w] & (-1L << (from - base)) : 0;
+		while (word == 0) {
+			if (++w >= starts.length) {
+				match[0] = match[1] = -1;
+				return null;
+			}
+			word = starts[w];
+		}
+		int begin = base + (w << 6) + Long.numberOfTrailingZeros(word);
+		if (engine == Engine.BIT_PARALLEL)
+			return bitParallel.match(s, begin, match);
+		return lazy.match(s, begin, match);
+	}
+
+	private static int indexOf(CharSequence s, String literal, int from) {
+		if (s instanceof String)
+			return ((String) s).indexOf(literal, from);
+		char first = literal.charAt(0);
+		for (int i = from, last = s.length() - literal.length(); i <= last; i++)
+			if (s.charAt(i) == first) {
+				int k = 1;
+				while (k < literal.length() && s.charAt(i + k) == literal.charAt(k))
+					k++;
+				if (k == literal.length())
+					return i;
+			}
+		return -1;
+	}
+}
@@ -30,11 +30,14 @@
 package net.pocorall.automaton;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
 
 import static net.pocorall.automaton.BasicOperations.*;
+import static net.pocorall.automaton.LinkedAutomaton.*;
 import static net.pocorall.automaton.SpecialOperations.*;
 
 /**
@@ -144,7 +147,7 @@ final public class MinimizationOperations {
 			states[n1].number = n1;
 			transitions[n1] = states[n1].getSortedTransitionArray(false);
 			for (int n2 = n1 + 1; n2 < states.length; n2++)
-				if (states[n1].accept != states[n2].accept)
+				if (states[n1].accept == null ? states[n2].accept != null : !states[n1].accept.equals(states[n2].accept))
 					mark[n1][n2] = true;
 		}
 		// for all pairs, see if states agree
@@ -198,9 +201,21 @@ final public class MinimizationOperations {
 	}
 
 	/**
-	 * Minimizes the given automaton using Hopcroft's algorithm.
+	 * Minimizes the given automaton using Hopcroft's algorithm. States with
+	 * different (non-<code>equals</code>) accept objects are never merged.
 	 */
 	public static void minimizeHopcroft(LinkedAutomaton a) {
+		minimizeHopcroft(a, null);
+	}
+
+	/**
+	 * Minimizes the given automaton using Hopcroft's algorithm, starting from a
+	 * partition of the states by the classes of their accept objects.
+	 *
+	 * @param classifier classes of accept objects, or null to partition by the
+	 *                   accept objects themselves
+	 */
+	public static void minimizeHopcroft(LinkedAutomaton a, AcceptClassifier classifier) {
 		determinize(a);
 		Set<Transition> tr = a.initial.getTransitions();
 		if (tr.size() == 1) {
@@ -247,14 +262,17 @@ final public class MinimizationOperations {
 				active[q][x] = new StateList();
 			}
 		}
-		// find initial partition and reverse edges
+		// find initial partition, one block per class of accept objects, and reverse edges
+		HashMap<Object, Integer> classes = new HashMap<Object, Integer>();
+		Object reject = new Object();
 		for (int q = 0; q < states.length; q++) {
 			State qq = states[q];
-			int j;
-			if (qq.accept != null)
-				j = 0;
-			else
-				j = 1;
+			Object c = qq.accept == null ? reject : classifier == null ? qq.accept : classifier.classify(qq.accept);
+			Integer j = classes.get(c);
+			if (j == null) {
+				j = classes.size();
+				classes.put(c, j);
+			}
 			partition.get(j).add(qq);
 			block[qq.number] = j;
 			for (int x = 0; x < sigma.length; x++) {
@@ -264,26 +282,27 @@ final public class MinimizationOperations {
 				reverse_nonempty[p.number][x] = true;
 			}
 		}
+		int blocks = classes.size();
 		// initialize active sets
-		for (int j = 0; j <= 1; j++)
+		for (int j = 0; j < blocks; j++)
 			for (int x = 0; x < sigma.length; x++)
 				for (State qq : partition.get(j))
 					if (reverse_nonempty[qq.number][x])
 						active2[qq.number][x] = active[j][x].add(qq);
-		// initialize pending
+		// initialize pending with all blocks but the largest
 		for (int x = 0; x < sigma.length; x++) {
-			int a0 = active[0][x].size;
-			int a1 = active[1][x].size;
-			int j;
-			if (a0 <= a1)
-				j = 0;
-			else
-				j = 1;
-			pending.add(new IntPair(j, x));
-			pending2[x][j] = true;
+			int largest = 0;
+			for (int j = 1; j < blocks; j++)
+				if (active[j][x].size > active[largest][x].size)
+					largest = j;
+			for (int j = 0; j < blocks; j++)
+				if (j != largest) {
+					pending.add(new IntPair(j, x));
+					pending2[x][j] = true;
+				}
 		}
 		// process pending until fixed point
-		int k = 2;
+		int k = blocks;
 		while (!pending.isEmpty()) {
 			IntPair ip = pending.removeFirst();
 			int p = ip.n1;
@@ -349,21 +368,279 @@ final public class MinimizationOperations {
 			for (State q : partition.get(n)) {
 				if (q == a.initial)
 					a.initial = s;
-				s.accept = q.accept;
+				if (q.accept != null)
+					s.accept = s.accept == null ? q.accept : LinkedAutomaton.accept_merger.merge(s.accept, q.accept);
 				s.number = q.number; // select representative
 				q.number = n;
 			}
 		}
-		// build transitions and set acceptance
+		// build transitions
 		for (int n = 0; n < newstates.length; n++) {
 			State s = newstates[n];
-			s.accept = states[s.number].accept;
 			for (Transition t : states[s.number].transitions)
 				s.transitions.add(new Transition(t.min, t.max, newstates[t.to.number]));
 		}
 		a.removeDeadTransitions();
 	}
 
+	/**
+	 * Minimizes the given automaton using the algorithm of Valmari and Lehtinen
+	 * ("Efficient Minimization of DFAs with Partial Transition Functions"),
+	 * which runs in O(n + m log m) time for n states and m transitions per
+	 * start point, on flat <code>int</code> arrays. States with different
+	 * (non-<code>equals</code>) accept objects are never merged.
+	 */
+	public static void minimizeValmari(LinkedAutomaton a) {
+		minimizeValmari(a, null);
+	}
+
+	/**
+	 * Minimizes the given automaton using the algorithm of Valmari and
+	 * Lehtinen, starting from a partition of the states by the classes of their
+	 * accept objects.
+	 *
+	 * @param classifier classes of accept objects, or null to partition by the
+	 *                   accept objects themselves
+	 */
+	public static void minimizeValmari(LinkedAutomaton a, AcceptClassifier classifier) {
+		determinize(a);
+		Set<State> ss = a.getStates();
+		Transition[][] transitions = getSortedTransitions(ss);
+		State[] states = new State[ss.size()];
+		for (State q : ss)
+			states[q.number] = q;
+		int n = states.length;
+		char[] points = getStartPoints(ss);
+		// one edge per state and start point with a transition, sorted by tail
+		int m = 0;
+		for (Transition[] ts : transitions)
+			for (Transition t : ts)
+				for (int x = Arrays.binarySearch(points, t.min); x < points.length && points[x] <= t.max; x++)
+					m++;
+		int[] tail = new int[m];
+		int[] label = new int[m];
+		int[] head = new int[m];
+		m = 0;
+		for (int q = 0; q < n; q++)
+			for (Transition t : transitions[q])
+				for (int x = Arrays.binarySearch(points, t.min); x < points.length && points[x] <= t.max; x++) {
+					tail[m] = q;
+					label[m] = x;
+					head[m++] = t.to.number;
+				}
+		int[] first = new int[n + 1]; // incoming edges adjacent[first[q]] to adjacent[first[q + 1] - 1] of each state q
+		int[] adjacent = new int[m];
+		// leave out edges to states from which no accept state is reachable
+		makeAdjacent(head, m, first, adjacent);
+		boolean[] live = new boolean[n];
+		int[] worklist = new int[n];
+		int size = 0;
+		for (int q = 0; q < n; q++)
+			if (states[q].accept != null) {
+				live[q] = true;
+				worklist[size++] = q;
+			}
+		while (size > 0) {
+			int q = worklist[--size];
+			for (int k = first[q]; k < first[q + 1]; k++) {
+				int p = tail[adjacent[k]];
+				if (!live[p]) {
+					live[p] = true;
+					worklist[size++] = p;
+				}
+			}
+		}
+		int k = 0;
+		for (int t = 0; t < m; t++)
+			if (live[head[t]]) {
+				tail[k] = tail[t];
+				label[k] = label[t];
+				head[k++] = head[t];
+			}
+		m = k;
+
+		int[] marked = new int[Math.max(n, m) + 1];
+		int[] touched = new int[Math.max(n, m) + 1];
+		// blocks of states, split by the classes of accept objects
+		Partition blocks = new Partition(n, marked, touched);
+		HashMap<Object, ArrayList<Integer>> classes = new HashMap<Object, ArrayList<Integer>>();
+		for (int q = 0; q < n; q++) {
+			Object accept = states[q].accept;
+			if (accept != null) {
+				Object c = classifier == null ? accept : classifier.classify(accept);
+				ArrayList<Integer> members = classes.get(c);
+				if (members == null) {
+					members = new ArrayList<Integer>();
+					classes.put(c, members);
+				}
+				members.add(q);
+			}
+		}
+		for (ArrayList<Integer> members : classes.values()) {
+			for (int q : members)
+				blocks.mark(q);
+			blocks.split();
+		}
+		// cords of edges, one per label
+		Partition cords = new Partition(m, marked, touched);
+		if (m > 0) {
+			int[] count = new int[points.length + 1];
+			for (int t = 0; t < m; t++)
+				count[label[t] + 1]++;
+			for (int x = 0; x < points.length; x++)
+				count[x + 1] += count[x];
+			for (int t = 0; t < m; t++) {
+				int i = count[label[t]]++;
+				cords.elements[i] = t;
+				cords.location[t] = i;
+			}
+			cords.count = 0;
+			for (int i = 0; i < m; i++) {
+				int t = cords.elements[i];
+				if (i > 0 && label[t] != label[cords.elements[i - 1]]) {
+					cords.past[cords.count++] = i;
+					cords.first[cords.count] = i;
+				}
+				cords.set[t] = cords.count;
+			}
+			cords.past[cords.count++] = m;
+		}
+		// split blocks by cords and cords by blocks until stable
+		makeAdjacent(head, m, first, adjacent);
+		for (int b = 1, c = 0; c < cords.count; c++) {
+			for (int i = cords.first[c]; i < cords.past[c]; i++)
+				blocks.mark(tail[cords.elements[i]]);
+			blocks.split();
+			for (; b < blocks.count; b++) {
+				for (int i = blocks.first[b]; i < blocks.past[b]; i++) {
+					int q = blocks.elements[i];
+					for (int j = first[q]; j < first[q + 1]; j++)
+						cords.mark(adjacent[j]);
+				}
+				cords.split();
+			}
+		}
+
+		// make a new state for each block
+		State[] newstates = new State[blocks.count];
+		for (int b = 0; b < blocks.count; b++) {
+			State s = new State();
+			newstates[b] = s;
+			for (int i = blocks.first[b]; i < blocks.past[b]; i++) {
+				Object accept = states[blocks.elements[i]].accept;
+				if (accept != null)
+					s.accept = s.accept == null ? accept : LinkedAutomaton.accept_merger.merge(s.accept, accept);
+			}
+		}
+		// take the transitions of the first state of each block, merging adjacent intervals
+		for (int b = 0; b < blocks.count; b++) {
+			int q = blocks.elements[blocks.first[b]];
+			State s = newstates[b];
+			State to = null;
+			char min = 0, max = 0;
+			for (Transition t : transitions[q]) {
+				if (!live[t.to.number])
+					continue;
+				State r = newstates[blocks.set[t.to.number]];
+				if (r == to && t.min == max + 1)
+					max = t.max;
+				else {
+					if (to != null)
+						s.transitions.add(new Transition(min, max, to));
+					to = r;
+					min = t.min;
+					max = t.max;
+				}
+			}
+			if (to != null)
+				s.transitions.add(new Transition(min, max, to));
+		}
+		a.initial = newstates[blocks.set[a.initial.number]];
+		a.clearHashCode();
+	}
+
+	/**
+	 * Sorts the given edges by the given ends, as <code>adjacent</code>, with
+	 * the edges of each state q from <code>first[q]</code>.
+	 */
+	private static void makeAdjacent(int[] ends, int m, int[] first, int[] adjacent) {
+		Arrays.fill(first, 0);
+		for (int t = 0; t < m; t++)
+			first[ends[t]]++;
+		for (int q = 0; q + 1 < first.length; q++)
+			first[q + 1] += first[q];
+		for (int t = 0; t < m; t++)
+			adjacent[--first[ends[t]]] = t;
+	}
+
+	/**
+	 * Refinable partition of the numbers 0 to n - 1. The sets are ranges of
+	 * <code>elements</code>; marked elements are moved to the start of their
+	 * set, and <code>split</code> splits off the marked or unmarked part of each
+	 * marked set, whichever is smaller.
+	 */
+	static class Partition {
+
+		int count; // number of sets
+		final int[] elements; // elements, by set
+		final int[] location; // index of each element in elements
+		final int[] set; // set of each element
+		final int[] first; // first index of each set
+		final int[] past; // index after the last of each set
+		final int[] marked; // number of marked elements of each set, shared
+		final int[] touched; // sets with marked elements, shared
+		int touchedCount;
+
+		Partition(int n, int[] marked, int[] touched) {
+			elements = new int[n];
+			location = new int[n];
+			set = new int[n];
+			first = new int[n + 1];
+			past = new int[n + 1];
+			this.marked = marked;
+			this.touched = touched;
+			for (int i = 0; i < n; i++)
+				elements[i] = location[i] = i;
+			if (n > 0) {
+				count = 1;
+				past[0] = n;
+			}
+		}
+
+		void mark(int e) {
+			int s = set[e];
+			int i = location[e];
+			int j = first[s] + marked[s];
+			elements[i] = elements[j];
+			location[elements[i]] = i;
+			elements[j] = e;
+			location[e] = j;
+			if (marked[s]++ == 0)
+				touched[touchedCount++] = s;
+		}
+
+		void split() {
+			while (touchedCount > 0) {
+				int s = touched[--touchedCount];
+				int j = first[s] + marked[s];
+				if (j == past[s]) {
+					marked[s] = 0;
+					continue;
+				}
+				if (marked[s] <= past[s] - j) {
+					first[count] = first[s];
+					past[count] = first[s] = j;
+				} else {
+					past[count] = past[s];
+					first[count] = past[s] = j;
+				}
+				for (int i = first[count]; i < past[count]; i++)
+					set[elements[i]] = count;
+				marked[s] = marked[count++] = 0;
+			}
+		}
+	}
+
 	static class IntPair {
 
 		int n1, n2;
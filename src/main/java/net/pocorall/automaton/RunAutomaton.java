@@ -31,7 +31,13 @@ package net.pocorall.automaton;
 
 import java.io.*;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Finite-state automaton with fast run operation.
@@ -40,26 +46,152 @@ import java.util.Set;
  */
 public class RunAutomaton implements Serializable, Automaton {
 
-	static final long serialVersionUID = 20001;
+	static final long serialVersionUID = 20002;
 
-	int size;
+	/**
+	 * Maximum number of states of the reverse automaton of
+	 * {@link #newLinearMatcher(CharSequence)} that are built ahead.
+	 */
+	public static final int REVERSE_STATE_BUDGET = LazyRunAutomaton.DEFAULT_MAX_STATES;
+
+	int size; // number of states, also the number of the dead state
 	Object[] accept;
 	int initial;
-	int[] transitions; // delta(state,c) = transitions[state*points.length + getCharClass(c)]
+	// delta(state,c) = transitions[state*stride + getCharClass(c)], the row of the dead state loops to itself
+	// only the narrowest table that can hold all entries is set
+	byte[] transitions8; // unsigned, used if size < 256
+	char[] transitions16; // used if 256 <= size < 65536
+	int[] transitions; // used otherwise
+	int stride; // row length of the transition table
+	// if set, the table holds row offsets (state*stride) instead of state numbers and stride is a power of two
+	boolean premultiplied;
+	int shift; // log2(stride) if premultiplied
+	int start; // initial state in the representation of the table (row offset or state number)
+	int dead; // dead state in the representation of the table
+	int acceptLimit; // accept states are numbered first, so p is an accept state iff p < acceptLimit
+	boolean[] startClasses; // char classes that leave the initial state, null if the initial state accepts
+	int startChar; // the only char that leaves the initial state, -1 if there are none or several
+	private transient volatile RunAutomaton reverse; // built on first use, see getReverse()
+	private transient volatile LazyRunAutomaton lazyReverse; // set instead of reverse if it has too many states
 	char[] points; // char interval start points
-	int[] classmap; // map from char number to class class
+	int[] classindex; // map from high byte of char to offset of its block in classmap
+	char[] classmap; // 256-entry blocks of char classes, identical blocks are shared
 
 	/**
 	 * Sets alphabet table for optimal run performance.
+	 * The table is split into 256 blocks of 256 chars each; blocks with the same
+	 * char classes (typically all blocks above Latin-1) are stored only once.
 	 */
 	final void setAlphabet() {
-		classmap = new int[Character.MAX_VALUE - Character.MIN_VALUE + 1];
+		classindex = new int[256];
+		HashMap<String, Integer> blocks = new HashMap<String, Integer>();
+		StringBuilder b = new StringBuilder();
+		char[] block = new char[256];
 		int i = 0;
 		for (int j = 0; j <= Character.MAX_VALUE - Character.MIN_VALUE; j++) {
 			if (i + 1 < points.length && j == points[i + 1])
 				i++;
-			classmap[j] = i;
+			block[j & 0xff] = (char) i;
+			if ((j & 0xff) == 0xff) {
+				String key = new String(block);
+				Integer offset = blocks.get(key);
+				if (offset == null) {
+					offset = b.length();
+					blocks.put(key, offset);
+					b.append(block);
+				}
+				classindex[j >>> 8] = offset;
+			}
+		}
+		classmap = b.toString().toCharArray();
+	}
+
+	/**
+	 * Finds the chars that can start a match, see {@link #skip(CharSequence, int, int)}.
+	 */
+	final void setStartChars() {
+		startChar = -1;
+		if (start < acceptLimit)
+			return;
+		startClasses = new boolean[points.length];
+		int chars = 0;
+		for (int c = 0; c < points.length; c++)
+			if (transition(initial * stride + c) != dead) {
+				startClasses[c] = true;
+				chars += (c + 1 < points.length ? points[c + 1] : Character.MAX_VALUE + 1) - points[c];
+				startChar = points[c];
+			}
+		if (chars != 1)
+			startChar = -1;
+	}
+
+	/**
+	 * Returns the first offset at or after <code>from</code> where a match may
+	 * start, or <code>end</code> if there is none. Offsets where the initial state
+	 * goes dead on the first char are skipped without running the automaton.
+	 */
+	final int skip(CharSequence s, int from, int end) {
+		if (startClasses == null)
+			return from;
+		if (startChar != -1) {
+			if (s instanceof String) {
+				int i = ((String) s).indexOf(startChar, from);
+				return i < 0 || i > end ? end : i;
+			}
+			while (from < end && s.charAt(from) != startChar)
+				from++;
+			return from;
+		}
+		boolean[] sc = startClasses;
+		while (from < end && !sc[getCharClass(s.charAt(from))])
+			from++;
+		return from;
+	}
+
+	/**
+	 * Finds the longest match in the given input that starts at
+	 * <code>begin</code>.
+	 *
+	 * @param match receives the start and end of the match
+	 * @return the accept object of the match, null if there is none
+	 */
+	final Object match(CharSequence s, int begin, int[] match) {
+		int p = start;
+		int acceptState = p;
+		int end = p < acceptLimit ? begin : -1;
+		for (int i = begin, l = s.length(); i < l; i++) {
+			p = next(p, s.charAt(i));
+			if (p == dead)
+				break;
+			if (p < acceptLimit) {
+				acceptState = p;
+				end = i + 1;
+			}
 		}
+		if (end < 0)
+			return null;
+		match[0] = begin;
+		match[1] = end;
+		return accept[stateOf(acceptState)];
+	}
+
+	/**
+	 * Stores the given transition table (which includes the row of the dead state)
+	 * in the narrowest array type that can hold all state numbers.
+	 */
+	final void setTransitions(int[] table) {
+		if (premultiplied)
+			transitions = table;
+		else if (size <= 0xff) {
+			transitions8 = new byte[table.length];
+			for (int n = 0; n < table.length; n++)
+				transitions8[n] = (byte) table[n];
+		} else if (size <= 0xffff) {
+			transitions16 = new char[table.length];
+			for (int n = 0; n < table.length; n++)
+				transitions16[n] = (char) table[n];
+		} else
+			transitions = table;
 	}
 
 	/**
@@ -76,8 +208,10 @@ public class RunAutomaton implements Serializable, Automaton {
 			else
 				b.append(" [reject]:\n");
 			for (int j = 0; j < points.length; j++) {
-				int k = transitions[i * points.length + j];
-				if (k != -1) {
+				int k = transition(i * stride + j);
+				if (k != dead) {
+					if (premultiplied)
+						k >>>= shift;
 					char min = points[j];
 					char max;
 					if (j + 1 < points.length)
@@ -130,7 +264,10 @@ public class RunAutomaton implements Serializable, Automaton {
 	 * Gets character class of given char.
 	 */
 	int getCharClass(char c) {
-		return SpecialOperations.findIndex(c, points);
+		if (classmap == null)
+			return SpecialOperations.findIndex(c, points);
+		else
+			return classmap[classindex[c >>> 8] + (c & 0xff)];
 	}
 
 	@SuppressWarnings("unused")
@@ -153,31 +290,98 @@ public class RunAutomaton implements Serializable, Automaton {
 	 * it is determinized first.
 	 *
 	 * @param a        an automaton
-	 * @param tableize if true, a transition table is created which makes the <code>run</code>
-	 *                 method faster in return of a higher memory usage
+	 * @param tableize if true, a char class table is created which makes the <code>run</code>
+	 *                 method faster in return of a higher memory usage (at most a few kilobytes
+	 *                 unless the automaton distinguishes many non-Latin-1 chars)
 	 */
 	public RunAutomaton(DefaultAutomaton a, boolean tableize) {
+		this(a, tableize, false);
+	}
+
+	/**
+	 * Constructs a new <code>RunAutomaton</code> from a deterministic
+	 * <code>DefaultAutomaton</code>. If the given automaton is not deterministic,
+	 * it is determinized first.
+	 *
+	 * @param a           an automaton
+	 * @param tableize    if true, a char class table is created which makes the <code>run</code>
+	 *                    method faster in return of a higher memory usage
+	 * @param premultiply if true, the transition table stores row offsets instead of state numbers,
+	 *                    which saves a multiplication per char in return of an <code>int</code> table
+	 *                    whose rows are padded to a power of two
+	 */
+	public RunAutomaton(DefaultAutomaton a, boolean tableize, boolean premultiply) {
 		BasicOperations.determinize(a);
 		points = a.getStartPoints();
 		Set<State> states = a.getStates();
-		LinkedAutomaton.setStateNumbers(states);
+		int accepts = 0;
+		for (State s : states)
+			if (s.accept != null)
+				s.number = accepts++;
+		size = accepts;
+		for (State s : states)
+			if (s.accept == null)
+				s.number = size++;
+		premultiplied = premultiply;
+		stride = points.length;
+		if (premultiply) {
+			while ((1 << shift) < points.length)
+				shift++;
+			stride = 1 << shift;
+		}
+		int mul = premultiply ? stride : 1;
 		initial = a.initial.number;
-		size = states.size();
+		start = initial * mul;
+		dead = size * mul;
+		acceptLimit = accepts * mul;
 		accept = new Object[size];
-		transitions = new int[size * points.length];
-		for (int n = 0; n < size * points.length; n++)
-			transitions[n] = -1;
+		int[] table = new int[(size + 1) * stride];
+		Arrays.fill(table, dead);
 		for (State s : states) {
 			int n = s.number;
 			accept[n] = s.accept;
 			for (int c = 0; c < points.length; c++) {
 				State q = s.step(points[c]);
 				if (q != null)
-					transitions[n * points.length + c] = q.number;
+					table[n * stride + c] = q.number * mul;
 			}
 		}
+		setTransitions(table);
 		if (tableize)
 			setAlphabet();
+		setStartChars();
+	}
+
+	/**
+	 * Returns the entry at the given index of the transition table.
+	 */
+	final int transition(int index) {
+		if (transitions8 != null)
+			return transitions8[index] & 0xff;
+		else if (transitions16 != null)
+			return transitions16[index];
+		else
+			return transitions[index];
+	}
+
+	/**
+	 * Returns the state obtained by reading the given char from the given
+	 * state, <code>dead</code> if the dead state is entered. States are given
+	 * in the representation of the transition table, see {@link #start}.
+	 */
+	final int next(int p, char c) {
+		if (premultiplied)
+			return transitions[p + getCharClass(c)];
+		else
+			return transition(p * stride + getCharClass(c));
+	}
+
+	/**
+	 * Returns the state number of the given state in the representation of
+	 * the transition table.
+	 */
+	final int stateOf(int p) {
+		return premultiplied ? p >>> shift : p;
 	}
 
 	/**
@@ -188,24 +392,129 @@ public class RunAutomaton implements Serializable, Automaton {
 	 * transition function.)
 	 */
 	public int step(int state, char c) {
-		if (classmap == null)
-			return transitions[state * points.length + getCharClass(c)];
-		else
-			return transitions[state * points.length + classmap[c - Character.MIN_VALUE]];
+		int q = next(premultiplied ? state << shift : state, c);
+		return q == dead ? -1 : stateOf(q);
 	}
 
 	/**
 	 * Returns true if the given string is accepted by this automaton.
 	 */
 	public Object run(String s) {
-		int p = initial;
+		int p = start;
 		int l = s.length();
-		for (int i = 0; i < l; i++) {
-			p = step(p, s.charAt(i));
-			if (p == -1)
-				return false;
+		if (premultiplied) {
+			int[] t = transitions;
+			for (int i = 0; i < l; i++) {
+				p = t[p + getCharClass(s.charAt(i))];
+				if (p == dead)
+					return false;
+			}
+		} else {
+			for (int i = 0; i < l; i++) {
+				p = next(p, s.charAt(i));
+				if (p == dead)
+					return false;
+			}
 		}
-		return accept[p];
+		return accept[stateOf(p)];
+	}
+
+	/**
+	 * Returns true if the given string is accepted by this automaton, like
+	 * {@link #run(String)}, using several threads.
+	 * <p/>
+	 * The string is split into chunks. For each chunk but the first, a task
+	 * computes the state reached at its end from every state at its start, by
+	 * running all states in lockstep and merging the runs that have reached the
+	 * same state, so the work drops to that of a single run once the runs
+	 * converge, as they typically do after a few chars. The functions are then
+	 * composed in order from the initial state.
+	 *
+	 * @param s        the string
+	 * @param executor runs the chunks
+	 * @param chunks   number of chunks
+	 * @throws InterruptedException if interrupted while waiting for the chunks
+	 */
+	public Object runParallel(final CharSequence s, ExecutorService executor, int chunks) throws InterruptedException {
+		int l = s.length();
+		chunks = Math.max(1, Math.min(chunks, l / 1024));
+		Future<?>[] functions = new Future<?>[chunks];
+		for (int i = 1; i < chunks; i++) {
+			final int from = (int) ((long) l * i / chunks);
+			final int to = (int) ((long) l * (i + 1) / chunks);
+			functions[i] = executor.submit(new Callable<int[]>() {
+				public int[] call() {
+					return transfer(s, from, to);
+				}
+			});
+		}
+		try {
+			int p = start;
+			int to = l / chunks;
+			for (int i = 0; i < to && p != dead; i++)
+				p = next(p, s.charAt(i));
+			for (int i = 1; i < chunks && p != dead; i++)
+				p = ((int[]) functions[i].get())[stateOf(p)];
+			return p == dead ? false : accept[stateOf(p)];
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			for (int i = 1; i < chunks; i++)
+				functions[i].cancel(true);
+		}
+	}
+
+	/**
+	 * Returns the transfer function of the given part of the string: the state
+	 * reached at <code>to</code> from each state number at <code>from</code>, in
+	 * the representation of the transition table.
+	 */
+	final int[] transfer(CharSequence s, int from, int to) {
+		int[] runs = new int[size]; // the distinct states reached, one per run
+		int[] run = new int[size]; // the run of each state number
+		int[] merged = new int[size + 1]; // new run of each state number when merging
+		int[] slot = new int[size]; // new run of each old run when merging
+		int mul = premultiplied ? stride : 1;
+		for (int n = 0; n < size; n++) {
+			runs[n] = n * mul;
+			run[n] = n;
+		}
+		int count = size;
+		for (int i = from; i < to && count > 0; ) {
+			// step all runs for a while, then merge the runs in the same state
+			for (int end = Math.min(to, i + 64); i < end; i++) {
+				char c = s.charAt(i);
+				for (int k = 0; k < count; k++)
+					runs[k] = next(runs[k], c);
+			}
+			if (count > 1 || runs[0] == dead) {
+				Arrays.fill(merged, -1);
+				int n = 0;
+				for (int k = 0; k < count; k++) {
+					int q = stateOf(runs[k]);
+					// the runs in the dead state are left out, their states map to dead
+					if (q == size)
+						slot[k] = -1;
+					else {
+						if (merged[q] < 0) {
+							merged[q] = n;
+							runs[n++] = runs[k];
+						}
+						slot[k] = merged[q];
+					}
+				}
+				for (int k = 0; k < size; k++)
+					if (run[k] >= 0)
+						run[k] = slot[run[k]];
+				count = n;
+			}
+		}
+		int[] f = new int[size];
+		for (int n = 0; n < size; n++)
+			f[n] = run[n] < 0 ? dead : runs[run[n]];
+		return f;
 	}
 
 	/**
@@ -217,21 +526,151 @@ public class RunAutomaton implements Serializable, Automaton {
 	 * @return length of the longest accepted run, -1 if no run is accepted
 	 */
 	public int run(String s, int offset) {
-		int p = initial;
+		int p = start;
 		int l = s.length();
 		int max = -1;
-		for (int r = 0; offset <= l; offset++, r++) {
-			if (accept[p] != null)
-				max = r;
-			if (offset == l)
-				break;
-			p = step(p, s.charAt(offset));
-			if (p == -1)
-				break;
+		if (premultiplied) {
+			int[] t = transitions;
+			for (int r = 0; offset <= l; offset++, r++) {
+				if (p < acceptLimit)
+					max = r;
+				if (offset == l)
+					break;
+				p = t[p + getCharClass(s.charAt(offset))];
+				if (p == dead)
+					break;
+			}
+		} else {
+			for (int r = 0; offset <= l; offset++, r++) {
+				if (p < acceptLimit)
+					max = r;
+				if (offset == l)
+					break;
+				p = next(p, s.charAt(offset));
+				if (p == dead)
+					break;
+			}
 		}
 		return max;
 	}
 
+	/**
+	 * Reports every accepted substring of the given text, including overlapping
+	 * and nested ones, in a single pass. A run is started at each offset and all
+	 * live runs are advanced together; the only allocations are the buffers of
+	 * live runs, which grow to the largest number of runs live at once.
+	 * Matches are reported in order of their end offsets, then of their start
+	 * offsets. Empty matches are reported if the initial state accepts.
+	 *
+	 * @param s       the text to search
+	 * @param handler receives the matches
+	 */
+	public void findAll(CharSequence s, MatchHandler handler) {
+		int l = s.length();
+		int[] states = new int[16];
+		int[] starts = new int[16];
+		int live = 0;
+		for (int i = 0; ; i++) {
+			if (live == states.length) {
+				int[] a = new int[live * 2];
+				System.arraycopy(states, 0, a, 0, live);
+				states = a;
+				a = new int[live * 2];
+				System.arraycopy(starts, 0, a, 0, live);
+				starts = a;
+			}
+			states[live] = start;
+			starts[live] = i;
+			live++;
+			for (int n = 0; n < live; n++)
+				if (states[n] < acceptLimit)
+					handler.onMatch(starts[n], i, accept[stateOf(states[n])]);
+			if (i == l)
+				break;
+			char c = s.charAt(i);
+			int k = 0;
+			for (int n = 0; n < live; n++) {
+				int p = next(states[n], c);
+				if (p != dead) {
+					states[k] = p;
+					starts[k] = starts[n];
+					k++;
+				}
+			}
+			live = k;
+		}
+	}
+
+	/**
+	 * Returns a new deterministic <code>DefaultAutomaton</code> with the states,
+	 * transitions and accept objects of this automaton.
+	 */
+	DefaultAutomaton toAutomaton() {
+		State[] states = new State[size];
+		for (int n = 0; n < size; n++) {
+			states[n] = new State();
+			states[n].accept = accept[n];
+		}
+		for (int n = 0; n < size; n++)
+			for (int c = 0; c < points.length; c++) {
+				int q = transition(n * stride + c);
+				if (q != dead) {
+					char max = c + 1 < points.length ? (char) (points[c + 1] - 1) : Character.MAX_VALUE;
+					states[n].transitions.add(new Transition(points[c], max, states[stateOf(q)]));
+				}
+			}
+		DefaultAutomaton a = new DefaultAutomaton();
+		a.initial = states[initial];
+		a.deterministic = true;
+		a.reduce();
+		return a;
+	}
+
+	/**
+	 * Returns an automaton that accepts the reverse of all strings that have a
+	 * prefix accepted by this automaton. Run backwards from the end of a string,
+	 * it is in an accept state exactly at the offsets where a match of this
+	 * automaton starts. Built on first use; null if it has more than
+	 * {@link #REVERSE_STATE_BUDGET} states, in which case
+	 * {@link #newLazyReverse()} builds its states as they are reached.
+	 */
+	RunAutomaton getReverse() {
+		if (reverse == null && lazyReverse == null) {
+			DefaultAutomaton a = toAutomaton();
+			SpecialOperations.reverse(a);
+			LazyRunAutomaton lazy = new LazyRunAutomaton(BasicAutomataFactory.makeAnyString().concatenate(a),
+					REVERSE_STATE_BUDGET);
+			if (lazy.explore()) {
+				a = lazy.toAutomaton();
+				a.minimize();
+				reverse = new RunAutomaton(a);
+			} else
+				lazyReverse = lazy;
+		}
+		return reverse;
+	}
+
+	/**
+	 * Returns a new lazy automaton of the reverse automaton, if
+	 * {@link #getReverse()} returned null. Each caller gets its own cache.
+	 */
+	LazyRunAutomaton newLazyReverse() {
+		return new LazyRunAutomaton(lazyReverse);
+	}
+
+	/**
+	 * Reports the leftmost-longest, non-overlapping matches in the given text,
+	 * the matches of {@link RunAutomatonMatcher#find()}, without allocating
+	 * anything per match.
+	 *
+	 * @param s       the text to search
+	 * @param handler receives the matches
+	 * @see RunAutomatonMatcher#scan(MatchHandler)
+	 */
+	public void scan(CharSequence s, MatchHandler handler) {
+		newMatcher(s).scan(handler);
+	}
+
 	/**
 	 * Creates a new automaton matcher for the given input.
 	 *
@@ -253,4 +692,42 @@ public class RunAutomaton implements Serializable, Automaton {
 	public RunAutomatonMatcher newMatcher(CharSequence s, int startOffset, int endOffset) {
 		return new RunAutomatonMatcher(s.subSequence(startOffset, endOffset), this);
 	}
+
+	/**
+	 * Creates a new matcher that reads its input from the given stream, such as a
+	 * {@link java.io.Reader} or a {@link java.nio.CharBuffer}, keeping only the
+	 * chars of a pending match in memory.
+	 *
+	 * @param in the stream to search
+	 * @return A new matcher for the given stream
+	 */
+	public RunAutomatonStreamMatcher newStreamMatcher(Readable in) {
+		return new RunAutomatonStreamMatcher(this, in);
+	}
+
+	/**
+	 * Creates a new automaton matcher for the given input whose <code>find</code>
+	 * method takes time linear in the length of the input, whatever the pattern.
+	 * <p/>
+	 * The first <code>find</code> runs a reverse automaton backwards over the
+	 * whole input to mark the offsets where matches start (one bit per char).
+	 * Each <code>find</code> then jumps to the leftmost marked offset and runs
+	 * this automaton forward once for the longest match. The matches are the
+	 * same as those of {@link #newMatcher(CharSequence)}, which in the worst case
+	 * (many near-misses) takes quadratic time per <code>find</code>.
+	 * <p/>
+	 * The reverse automaton, <code>.*</code> followed by the reverse of this
+	 * automaton, is built on the first <code>find</code> of any linear matcher of
+	 * this automaton, and can have exponentially more states than this
+	 * automaton (as for <code>.{20}a</code>). If it has more than
+	 * {@link #REVERSE_STATE_BUDGET} states, each matcher builds its states as the
+	 * input reaches them (see {@link LazyRunAutomaton}), which is slower per char
+	 * but bounds the memory used.
+	 *
+	 * @param s the CharSequence to search
+	 * @return A new automaton matcher for the given input
+	 */
+	public RunAutomatonMatcher newLinearMatcher(CharSequence s) {
+		return new RunAutomatonMatcher(s, this, true);
+	}
 }
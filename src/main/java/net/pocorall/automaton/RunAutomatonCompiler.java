@@ -0,0 +1,371 @@
+package net.pocorall.automaton;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a {@link RunAutomaton} to JVM bytecode.
+ * <p/>
+ * The generated class has a <code>run(String)</code> method with one block of
+ * code per state. A block reads the next char and jumps to the block of the
+ * next state after a binary search over the char intervals of the state, so
+ * the JIT sees plain compares and branches instead of table lookups. The class
+ * file is written without any library and loaded by its own class loader, so
+ * it can be unloaded with the returned automaton.
+ */
+final public class RunAutomatonCompiler {
+
+	/**
+	 * Largest bytecode size of a generated <code>run</code> method. Larger
+	 * methods are not compiled by the JIT (see <code>-XX:-DontCompileHugeMethods</code>),
+	 * so automata that need larger methods are not compiled.
+	 */
+	public static final int MAX_METHOD_SIZE = 8000;
+
+	private static int classes;
+
+	private RunAutomatonCompiler() {
+	}
+
+	/**
+	 * Returns an automaton that accepts the same strings as the given one with
+	 * the same accept objects, using generated bytecode. Returns the given
+	 * automaton itself if the generated method would exceed
+	 * {@link #MAX_METHOD_SIZE}.
+	 */
+	public static Automaton compile(RunAutomaton a) {
+		String name;
+		synchronized (RunAutomatonCompiler.class) {
+			name = "net.pocorall.automaton.GeneratedAutomaton" + classes++;
+		}
+		byte[] b = generate(a, name.replace('.', '/'));
+		if (b == null)
+			return a;
+		try {
+			Class<?> c = new Loader().define(name, b);
+			return (Automaton) c.getConstructor(Object[].class).newInstance((Object) a.accept.clone());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Loads one generated class.
+	 */
+	private static class Loader extends ClassLoader {
+
+		Loader() {
+			super(Automaton.class.getClassLoader());
+		}
+
+		Class<?> define(String name, byte[] b) {
+			return defineClass(name, b, 0, b.length);
+		}
+	}
+
+	/**
+	 * Returns the class file of the given automaton, null if its
+	 * <code>run</code> method is too large.
+	 */
+	static byte[] generate(RunAutomaton a, String name) {
+		ClassWriter w = new ClassWriter();
+		int thisClass = w.classRef(name);
+		int objectClass = w.classRef("java/lang/Object");
+		int automatonClass = w.classRef("net/pocorall/automaton/Automaton");
+		int acceptField = w.memberRef(9, name, "accept", "[Ljava/lang/Object;");
+		int objectInit = w.memberRef(10, "java/lang/Object", "<init>", "()V");
+		int length = w.memberRef(10, "java/lang/String", "length", "()I");
+		int charAt = w.memberRef(10, "java/lang/String", "charAt", "(I)C");
+		int falseField = w.memberRef(9, "java/lang/Boolean", "FALSE", "Ljava/lang/Boolean;");
+
+		// constructor: this.accept = accept
+		Code init = new Code(w);
+		init.op(0x2a).op(0xb7).u2(objectInit); // aload_0, invokespecial
+		init.op(0x2a).op(0x2b).op(0xb5).u2(acceptField); // aload_0, aload_1, putfield
+		init.op(0xb1); // return
+
+		// run: locals are 1 = s, 2 = i, 3 = s.length(), 4 = char
+		Code run = new Code(w);
+		int size = a.size;
+		int[] states = new int[size];
+		for (int n = 0; n < size; n++)
+			states[n] = run.newLabel();
+		int reject = run.newLabel();
+		run.op(0x2b).op(0xb6).u2(length).op(0x3e); // aload_1, invokevirtual, istore_3
+		run.op(0x03).op(0x3d); // iconst_0, istore_2
+		run.jump(0xa7, states[a.initial]); // goto
+		char[] points = a.points;
+		int[] min = new int[points.length];
+		int[] target = new int[points.length];
+		for (int n = 0; n < size; n++) {
+			run.mark(states[n]);
+			int end = run.newLabel();
+			run.op(0x1c).op(0x1d).jump(0xa2, end); // iload_2, iload_3, if_icmpge
+			run.op(0x2b).op(0x1c).op(0xb6).u2(charAt); // aload_1, iload_2, invokevirtual
+			run.op(0x36).u1(4).op(0x84).u1(2).u1(1); // istore 4, iinc 2 1
+			// the char intervals of the state, adjacent intervals with the same target merged
+			int k = 0;
+			for (int c = 0; c < points.length; c++) {
+				int q = a.transition(n * a.stride + c);
+				int t = q == a.dead ? reject : states[a.stateOf(q)];
+				if (k == 0 || target[k - 1] != t) {
+					min[k] = points[c];
+					target[k++] = t;
+				}
+			}
+			dispatch(run, min, target, 0, k - 1);
+			run.mark(end);
+			if (a.accept[n] == null)
+				run.op(0x01).op(0xb0); // aconst_null, areturn
+			else {
+				run.op(0x2a).op(0xb4).u2(acceptField); // aload_0, getfield
+				run.push(n).op(0x32).op(0xb0); // aaload, areturn
+			}
+			if (run.size() > MAX_METHOD_SIZE)
+				return null;
+		}
+		run.mark(reject);
+		run.op(0xb2).u2(falseField).op(0xb0); // getstatic, areturn
+		if (run.size() > MAX_METHOD_SIZE)
+			return null;
+
+		int initName = w.utf8("<init>");
+		int initType = w.utf8("([Ljava/lang/Object;)V");
+		int runName = w.utf8("run");
+		int runType = w.utf8("(Ljava/lang/String;)Ljava/lang/Object;");
+		int acceptName = w.utf8("accept");
+		int acceptType = w.utf8("[Ljava/lang/Object;");
+		int codeName = w.utf8("Code");
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xcafebabe);
+			out.writeShort(0);
+			out.writeShort(49); // no stack map frames needed
+			w.writeConstants(out);
+			out.writeShort(0x31); // public final super
+			out.writeShort(thisClass);
+			out.writeShort(objectClass);
+			out.writeShort(1);
+			out.writeShort(automatonClass);
+			out.writeShort(1);
+			out.writeShort(0x12); // private final
+			out.writeShort(acceptName);
+			out.writeShort(acceptType);
+			out.writeShort(0);
+			out.writeShort(2);
+			init.writeMethod(out, 0x01, initName, initType, codeName, 2, 2);
+			run.writeMethod(out, 0x01, runName, runType, codeName, 3, 5);
+			out.writeShort(0);
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Emits a binary search over the intervals <code>lo</code> to <code>hi</code>
+	 * that jumps to the target of the interval of the char in local 4.
+	 */
+	private static void dispatch(Code run, int[] min, int[] target, int lo, int hi) {
+		if (lo == hi) {
+			run.jump(0xa7, target[lo]); // goto
+			return;
+		}
+		int mid = (lo + hi + 1) >>> 1;
+		int left = run.newLabel();
+		run.op(0x15).u1(4).push(min[mid]).jump(0xa1, left); // iload 4, if_icmplt
+		dispatch(run, min, target, mid, hi);
+		run.mark(left);
+		dispatch(run, min, target, lo, mid - 1);
+	}
+
+	/**
+	 * Constant pool of a class file.
+	 */
+	private static class ClassWriter {
+
+		final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(constants);
+		final Map<String, Integer> index = new HashMap<String, Integer>();
+		int count = 1;
+
+		int utf8(String s) {
+			Integer i = index.get("U" + s);
+			if (i == null) {
+				try {
+					out.writeByte(1);
+					out.writeUTF(s);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				i = count++;
+				index.put("U" + s, i);
+			}
+			return i;
+		}
+
+		int integer(int v) {
+			Integer i = index.get("I" + v);
+			if (i == null) {
+				write(3, v >>> 16, v & 0xffff);
+				i = count++;
+				index.put("I" + v, i);
+			}
+			return i;
+		}
+
+		int classRef(String name) {
+			Integer i = index.get("C" + name);
+			if (i == null) {
+				int n = utf8(name);
+				write(7, n, -1);
+				i = count++;
+				index.put("C" + name, i);
+			}
+			return i;
+		}
+
+		/**
+		 * Returns a field (tag 9) or method (tag 10) reference.
+		 */
+		int memberRef(int tag, String owner, String name, String type) {
+			String key = tag + owner + "." + name + ":" + type;
+			Integer i = index.get(key);
+			if (i == null) {
+				int c = classRef(owner);
+				int n = utf8(name);
+				int t = utf8(type);
+				write(12, n, t);
+				int nameAndType = count++;
+				write(tag, c, nameAndType);
+				i = count++;
+				index.put(key, i);
+			}
+			return i;
+		}
+
+		private void write(int tag, int a, int b) {
+			try {
+				out.writeByte(tag);
+				out.writeShort(a);
+				if (b >= 0)
+					out.writeShort(b);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void writeConstants(DataOutputStream o) throws IOException {
+			o.writeShort(count);
+			constants.writeTo(o);
+		}
+	}
+
+	/**
+	 * Bytecode of a method, with labels for branch targets.
+	 */
+	private static class Code {
+
+		final ClassWriter w;
+		byte[] code = new byte[256];
+		int length;
+		final List<int[]> jumps = new ArrayList<int[]>(); // offset of the jump instruction, label
+		int[] labels = new int[16];
+		int labelCount;
+
+		Code(ClassWriter w) {
+			this.w = w;
+		}
+
+		int size() {
+			return length;
+		}
+
+		Code u1(int b) {
+			if (length == code.length) {
+				byte[] c = new byte[code.length * 2];
+				System.arraycopy(code, 0, c, 0, length);
+				code = c;
+			}
+			code[length++] = (byte) b;
+			return this;
+		}
+
+		Code op(int opcode) {
+			return u1(opcode);
+		}
+
+		Code u2(int v) {
+			return u1(v >>> 8).u1(v);
+		}
+
+		/**
+		 * Pushes the given int.
+		 */
+		Code push(int v) {
+			if (v >= -1 && v <= 5)
+				return op(0x03 + v); // iconst
+			else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE)
+				return op(0x10).u1(v); // bipush
+			else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE)
+				return op(0x11).u2(v); // sipush
+			else
+				return op(0x13).u2(w.integer(v)); // ldc_w
+		}
+
+		int newLabel() {
+			if (labelCount == labels.length) {
+				int[] l = new int[labels.length * 2];
+				System.arraycopy(labels, 0, l, 0, labelCount);
+				labels = l;
+			}
+			labels[labelCount] = -1;
+			return labelCount++;
+		}
+
+		void mark(int label) {
+			labels[label] = length;
+		}
+
+		/**
+		 * Emits a branch instruction to the given label.
+		 */
+		Code jump(int opcode, int label) {
+			jumps.add(new int[] {length, label});
+			return op(opcode).u2(0);
+		}
+
+		/**
+		 * Fills in the offsets of the branch instructions.
+		 */
+		void patch() {
+			for (int[] j : jumps) {
+				int offset = labels[j[1]] - j[0];
+				code[j[0] + 1] = (byte) (offset >>> 8);
+				code[j[0] + 2] = (byte) offset;
+			}
+		}
+
+		void writeMethod(DataOutputStream out, int access, int name, int type, int codeName, int maxStack, int maxLocals) throws IOException {
+			patch();
+			out.writeShort(access);
+			out.writeShort(name);
+			out.writeShort(type);
+			out.writeShort(1);
+			out.writeShort(codeName);
+			out.writeInt(12 + length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(length);
+			out.write(code, 0, length);
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+	}
+}
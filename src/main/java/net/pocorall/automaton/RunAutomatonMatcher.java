@@ -42,12 +42,24 @@ import java.util.regex.MatchResult;
 public class RunAutomatonMatcher implements MatchResult {
 
 	RunAutomatonMatcher(final CharSequence chars, final RunAutomaton automaton) {
+		this(chars, automaton, false);
+	}
+
+	RunAutomatonMatcher(final CharSequence chars, final RunAutomaton automaton, final boolean linear) {
 		this.chars = chars;
 		this.automaton = automaton;
+		this.linear = linear;
 	}
 
 	private final RunAutomaton automaton;
 	private final CharSequence chars;
+	private final boolean linear;
+
+	/**
+	 * Offsets where a match starts, one bit per offset from 0 to the length of the
+	 * input. Computed by the first <code>find</code> of a linear matcher.
+	 */
+	private long[] starts;
 
 	private int previousStart = -1;
 	private int matchStart = -1;
@@ -82,10 +94,15 @@ public class RunAutomatonMatcher implements MatchResult {
 				}
 		}
 
+		if (linear)
+			return findLinear(begin);
+
 		int match_start;
 		int match_end;
-		Object acceptObj = automaton.isAccept(automaton.getInitialState());
-		if (acceptObj != null) {
+		final int dead = automaton.dead;
+		final int acceptLimit = automaton.acceptLimit;
+		int acceptState = automaton.start;
+		if (acceptState < acceptLimit) {
 			match_start = begin;
 			match_end = begin;
 		} else {
@@ -94,14 +111,17 @@ public class RunAutomatonMatcher implements MatchResult {
 		}
 		int l = getChars().length();
 		while (begin < l) {
-			int p = automaton.getInitialState();
+			begin = automaton.skip(getChars(), begin, l);
+			if (begin == l)
+				break;
+			int p = automaton.start;
 			for (int i = begin; i < l; i++) {
-				final int new_state = automaton.step(p, getChars().charAt(i));
-				if (new_state == -1) {
+				final int new_state = automaton.next(p, getChars().charAt(i));
+				if (new_state == dead) {
 					break;
-				} else if (automaton.isAccept(new_state) != null) {
+				} else if (new_state < acceptLimit) {
 					// found a match from begin to (i+1)
-					acceptObj = automaton.isAccept(new_state);
+					acceptState = new_state;
 					match_start = begin;
 					match_end = (i + 1);
 				}
@@ -109,19 +129,99 @@ public class RunAutomatonMatcher implements MatchResult {
 			}
 			if (match_start != -1) {
 				setMatch(match_start, match_end);
-				return acceptObj;
+				return automaton.accept[automaton.stateOf(acceptState)];
 			}
 			begin += 1;
 		}
 		if (match_start != -1) {
 			setMatch(match_start, match_end);
-			return acceptObj;
+			return automaton.accept[automaton.stateOf(acceptState)];
 		} else {
 			setMatch(-2, -2);
 			return null;
 		}
 	}
 
+	/**
+	 * Reports the remaining matches of the input to the given handler, as
+	 * repeated calls to {@link #find()} would find them. Only offsets and accept
+	 * objects are reported, so nothing is allocated per match.
+	 *
+	 * @param handler receives the matches
+	 */
+	public void scan(final MatchHandler handler) {
+		for (Object accept = find(); accept != null; accept = find())
+			handler.onMatch(matchStart, matchEnd, accept);
+	}
+
+	/**
+	 * Finds the leftmost-longest match starting at or after <code>begin</code>
+	 * using the marked match starts.
+	 */
+	private Object findLinear(final int begin) {
+		if (starts == null)
+			starts = markStarts();
+		int w = begin >>> 6;
+		long word = starts[w] & (-1L << begin);
+		while (word == 0) {
+			if (++w == starts.length) {
+				setMatch(-2, -2);
+				return null;
+			}
+			word = starts[w];
+		}
+		final int match_start = (w << 6) + Long.numberOfTrailingZeros(word);
+		final int dead = automaton.dead;
+		final int acceptLimit = automaton.acceptLimit;
+		int p = automaton.start;
+		int acceptState = p;
+		int match_end = match_start;
+		int l = getChars().length();
+		for (int i = match_start; i < l; i++) {
+			p = automaton.next(p, getChars().charAt(i));
+			if (p == dead)
+				break;
+			if (p < acceptLimit) {
+				acceptState = p;
+				match_end = i + 1;
+			}
+		}
+		setMatch(match_start, match_end);
+		return automaton.accept[automaton.stateOf(acceptState)];
+	}
+
+	/**
+	 * Runs the reverse automaton backwards over the input and returns the
+	 * offsets where a match starts.
+	 */
+	private long[] markStarts() {
+		final RunAutomaton reverse = automaton.getReverse();
+		int l = getChars().length();
+		long[] bits = new long[(l >>> 6) + 1];
+		if (reverse == null) {
+			LazyRunAutomaton lazy = automaton.newLazyReverse();
+			LazyRunAutomaton.DState d = lazy.initial();
+			if (d.accept != null)
+				bits[l >>> 6] |= 1L << l;
+			for (int i = l - 1; i >= 0; i--) {
+				d = lazy.step(d, getChars().charAt(i));
+				if (d.accept != null)
+					bits[i >>> 6] |= 1L << i;
+			}
+			return bits;
+		}
+		final int acceptLimit = reverse.acceptLimit;
+		int p = reverse.start;
+		if (p < acceptLimit)
+			bits[l >>> 6] |= 1L << l;
+		for (int i = l - 1; i >= 0; i--) {
+			p = reverse.next(p, getChars().charAt(i));
+			if (p < acceptLimit)
+				bits[i >>> 6] |= 1L << i;
+		}
+		return bits;
+	}
+
 	private void setMatch(final int matchStart, final int matchEnd) throws IllegalArgumentException {
 		if (matchStart > matchEnd) {
 			throw new IllegalArgumentException("Start must be less than or equal to end: " + matchStart + ", " + matchEnd);
@@ -0,0 +1,231 @@
+package net.pocorall.automaton;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the Java source of a standalone class that runs a {@link RunAutomaton},
+ * so that applications can skip parsing, determinizing and minimizing their
+ * patterns at startup.
+ * <p/>
+ * The generated class implements {@link Automaton} and has a
+ * <code>find(CharSequence, int, int[])</code> method for leftmost-longest
+ * search. Its tables are stored in string constants, which keeps the class
+ * initializer small for large automata. Accept objects are written as
+ * literals, so they must be <code>Boolean</code>, <code>Integer</code> or
+ * <code>String</code> values.
+ * <p/>
+ * Run from the command line (or a build) as
+ * <pre>
+ * java net.pocorall.automaton.RunAutomatonSourceGenerator &lt;regexp | @file&gt; &lt;class name&gt; &lt;output directory&gt;
+ * </pre>
+ * where <code>@file</code> names a file holding a serialized
+ * <code>DefaultAutomaton</code> or <code>RunAutomaton</code>.
+ */
+final public class RunAutomatonSourceGenerator {
+
+	private RunAutomatonSourceGenerator() {
+	}
+
+	/**
+	 * Generates the class from the command line arguments.
+	 */
+	public static void main(String[] args) throws IOException, ClassNotFoundException {
+		if (args.length != 3) {
+			System.err.println("usage: RunAutomatonSourceGenerator <regexp | @file> <class name> <output directory>");
+			System.exit(1);
+		}
+		RunAutomaton a;
+		if (args[0].startsWith("@")) {
+			ObjectInputStream in = new ObjectInputStream(new FileInputStream(args[0].substring(1)));
+			try {
+				Object o = in.readObject();
+				a = o instanceof RunAutomaton ? (RunAutomaton) o : new RunAutomaton((DefaultAutomaton) o);
+			} finally {
+				in.close();
+			}
+		} else
+			a = new RunAutomaton(new RegExp(args[0]).toAutomaton());
+		File file = new File(args[2], args[1].replace('.', File.separatorChar) + ".java");
+		file.getParentFile().mkdirs();
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			generate(a, args[1], out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the source of a class that runs the given automaton.
+	 *
+	 * @param a         the automaton, with fewer than 65535 states
+	 * @param className fully qualified name of the class
+	 * @param out       receives the source
+	 * @throws IllegalArgumentException if an accept object is not a
+	 *                                  <code>Boolean</code>, <code>Integer</code>
+	 *                                  or <code>String</code>
+	 */
+	public static void generate(RunAutomaton a, String className, Appendable out) throws IOException {
+		if (a.size >= 0xffff)
+			throw new IllegalArgumentException("Too many states: " + a.size);
+		if (a.classmap == null)
+			a = new RunAutomaton(a.toAutomaton(), true);
+		int dot = className.lastIndexOf('.');
+		if (dot >= 0)
+			out.append("package ").append(className.substring(0, dot)).append(";\n\n");
+		out.append("/**\n * Generated by net.pocorall.automaton.RunAutomatonSourceGenerator, do not edit.\n */\n");
+		out.append("public final class ").append(className.substring(dot + 1)).append(" implements net.pocorall.automaton.Automaton {\n\n");
+
+		// accept objects: the distinct values, and the index + 1 of the value of each state
+		List<Object> values = new ArrayList<Object>();
+		Map<Object, Integer> index = new HashMap<Object, Integer>();
+		StringBuilder accepts = new StringBuilder();
+		for (int n = 0; n < a.size; n++) {
+			Object o = a.accept[n];
+			if (o == null)
+				accepts.append((char) 0);
+			else {
+				if (!(o instanceof Boolean || o instanceof Integer || o instanceof String))
+					throw new IllegalArgumentException("Accept object cannot be written as a literal: " + o.getClass().getName());
+				Integer i = index.get(o);
+				if (i == null) {
+					i = values.size();
+					index.put(o, i);
+					values.add(o);
+				}
+				accepts.append((char) (i + 1));
+			}
+		}
+		out.append("\tprivate static final Object[] VALUES = {");
+		for (int i = 0; i < values.size(); i++) {
+			Object o = values.get(i);
+			out.append(i == 0 ? "" : ", ");
+			if (o instanceof Boolean)
+				out.append(o.equals(Boolean.TRUE) ? "Boolean.TRUE" : "Boolean.FALSE");
+			else if (o instanceof Integer)
+				out.append("Integer.valueOf(").append(o.toString()).append(")");
+			else
+				appendString(out, o.toString());
+		}
+		out.append("};\n");
+		appendTable(out, "ACCEPTS", accepts);
+
+		StringBuilder b = new StringBuilder();
+		for (int i : a.classindex)
+			b.append((char) i);
+		appendTable(out, "CLASSINDEX", b);
+		appendTable(out, "CLASSMAP", new StringBuilder().append(a.classmap));
+		b.setLength(0);
+		int entries = (a.size + 1) * a.stride;
+		for (int i = 0; i < entries; i++) {
+			int q = a.transition(i);
+			b.append((char) (q == a.dead ? a.size : a.stateOf(q)));
+		}
+		appendTable(out, "TRANSITIONS", b);
+		out.append("\tprivate static final int STRIDE = ").append(Integer.toString(a.stride)).append(";\n");
+		out.append("\tprivate static final int INITIAL = ").append(Integer.toString(a.initial)).append(";\n");
+		out.append("\tprivate static final int DEAD = ").append(Integer.toString(a.size)).append(";\n\n");
+
+		out.append("\tprivate static char[] unpack(String[] parts) {\n" +
+				"\t\tStringBuilder b = new StringBuilder();\n" +
+				"\t\tfor (String part : parts)\n" +
+				"\t\t\tb.append(part);\n" +
+				"\t\treturn b.toString().toCharArray();\n" +
+				"\t}\n\n" +
+				"\tprivate static int step(int p, char c) {\n" +
+				"\t\treturn TRANSITIONS[p * STRIDE + CLASSMAP[CLASSINDEX[c >>> 8] + (c & 0xff)]];\n" +
+				"\t}\n\n" +
+				"\tprivate static Object accept(int p) {\n" +
+				"\t\tint i = ACCEPTS[p];\n" +
+				"\t\treturn i == 0 ? null : VALUES[i - 1];\n" +
+				"\t}\n\n" +
+				"\t/**\n" +
+				"\t * Returns the accept object if the given string is accepted, null or false otherwise.\n" +
+				"\t */\n" +
+				"\tpublic Object run(String s) {\n" +
+				"\t\tint p = INITIAL;\n" +
+				"\t\tfor (int i = 0, l = s.length(); i < l; i++) {\n" +
+				"\t\t\tp = step(p, s.charAt(i));\n" +
+				"\t\t\tif (p == DEAD)\n" +
+				"\t\t\t\treturn false;\n" +
+				"\t\t}\n" +
+				"\t\treturn accept(p);\n" +
+				"\t}\n\n" +
+				"\t/**\n" +
+				"\t * Finds the leftmost-longest match that starts at or after the given offset.\n" +
+				"\t *\n" +
+				"\t * @param match receives the start and end of the match\n" +
+				"\t * @return the accept object of the match, null if there is none\n" +
+				"\t */\n" +
+				"\tpublic Object find(CharSequence s, int from, int[] match) {\n" +
+				"\t\tfor (int l = s.length(); from <= l; from++) {\n" +
+				"\t\t\tint p = INITIAL;\n" +
+				"\t\t\tint end = ACCEPTS[p] != 0 ? from : -1;\n" +
+				"\t\t\tint q = p;\n" +
+				"\t\t\tfor (int i = from; i < l; i++) {\n" +
+				"\t\t\t\tp = step(p, s.charAt(i));\n" +
+				"\t\t\t\tif (p == DEAD)\n" +
+				"\t\t\t\t\tbreak;\n" +
+				"\t\t\t\tif (ACCEPTS[p] != 0) {\n" +
+				"\t\t\t\t\tend = i + 1;\n" +
+				"\t\t\t\t\tq = p;\n" +
+				"\t\t\t\t}\n" +
+				"\t\t\t}\n" +
+				"\t\t\tif (end >= 0) {\n" +
+				"\t\t\t\tmatch[0] = from;\n" +
+				"\t\t\t\tmatch[1] = end;\n" +
+				"\t\t\t\treturn accept(q);\n" +
+				"\t\t\t}\n" +
+				"\t\t}\n" +
+				"\t\treturn null;\n" +
+				"\t}\n" +
+				"}\n");
+	}
+
+	/**
+	 * Appends a <code>char[]</code> constant, stored as string literals short
+	 * enough for the constant pool.
+	 */
+	private static void appendTable(Appendable out, String name, CharSequence chars) throws IOException {
+		out.append("\tprivate static final char[] ").append(name).append(" = unpack(new String[] {");
+		for (int i = 0; i < chars.length(); i += 8192) {
+			out.append(i == 0 ? "\n\t\t\t" : ",\n\t\t\t");
+			appendString(out, chars.subSequence(i, Math.min(chars.length(), i + 8192)));
+		}
+		out.append("});\n");
+	}
+
+	private static void appendString(Appendable out, CharSequence s) throws IOException {
+		out.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c < 0x7f && c != '"' && c != '\\')
+				out.append(c);
+			else if (c < 0x100) {
+				// octal, since unicode escapes of line breaks, quotes and backslashes end the literal
+				String o = Integer.toOctalString(c);
+				out.append('\\');
+				for (int k = o.length(); k < 3; k++)
+					out.append('0');
+				out.append(o);
+			} else {
+				String h = Integer.toHexString(c);
+				out.append("\\u");
+				for (int k = h.length(); k < 4; k++)
+					out.append('0');
+				out.append(h);
+			}
+		}
+		out.append('"');
+	}
+}
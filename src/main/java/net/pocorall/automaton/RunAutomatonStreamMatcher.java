@@ -0,0 +1,172 @@
+package net.pocorall.automaton;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/**
+ * Finds the matches of a {@link RunAutomaton} in a stream of chars, such as a
+ * {@link java.io.Reader} or a {@link CharBuffer}, without holding the whole
+ * input in memory. Byte channels can be read through
+ * {@link java.nio.channels.Channels#newReader}.
+ * <p/>
+ * The matches are the same as those of {@link RunAutomatonMatcher#find()}, with
+ * offsets counted from the start of the stream as <code>long</code>s. Only the
+ * chars from the offset where the current match attempt started are kept in
+ * memory, so the memory used is bounded by the longest partial match plus the
+ * size of a read.
+ *
+ * @see RunAutomaton#newStreamMatcher(Readable)
+ */
+public class RunAutomatonStreamMatcher {
+
+	private final RunAutomaton automaton;
+	private final Readable in;
+
+	private char[] buf = new char[8192];
+	private long base; // offset of buf[0] in the stream
+	private int limit; // number of chars in buf
+	private boolean eof;
+
+	private long matchStart = -1;
+	private long matchEnd = -1;
+	private boolean done;
+
+	RunAutomatonStreamMatcher(RunAutomaton automaton, Readable in) {
+		this.automaton = automaton;
+		this.in = in;
+	}
+
+	/**
+	 * Finds the next match in the stream, reading more chars as needed.
+	 *
+	 * @return the accept object of the match, null if there are no more matches
+	 * @throws IOException if reading the stream fails
+	 */
+	public Object find() throws IOException {
+		if (done)
+			return null;
+		int begin = 0;
+		if (matchEnd >= 0) {
+			begin = (int) (matchEnd - base);
+			// a previous empty match, as with a*
+			if (matchEnd == matchStart)
+				begin++;
+		}
+		final RunAutomaton a = automaton;
+		final int dead = a.dead;
+		final int acceptLimit = a.acceptLimit;
+		final boolean[] startClasses = a.startClasses;
+		while (true) {
+			while (begin >= limit && !eof)
+				begin -= fill(begin);
+			if (begin > limit) {
+				done = true;
+				matchStart = matchEnd = -1;
+				return null;
+			}
+			if (startClasses != null) {
+				while (true) {
+					while (begin < limit && !startClasses[a.getCharClass(buf[begin])])
+						begin++;
+					if (begin < limit || eof)
+						break;
+					begin -= fill(begin);
+				}
+			}
+			int p = a.start;
+			int acceptState = p;
+			int end = p < acceptLimit ? begin : -1;
+			for (int i = begin; ; i++) {
+				if (i == limit) {
+					if (eof)
+						break;
+					int dropped = fill(begin);
+					begin -= dropped;
+					i -= dropped;
+					end = end < 0 ? -1 : end - dropped;
+					if (i == limit)
+						break;
+				}
+				p = a.next(p, buf[i]);
+				if (p == dead)
+					break;
+				if (p < acceptLimit) {
+					acceptState = p;
+					end = i + 1;
+				}
+			}
+			if (end >= 0) {
+				matchStart = base + begin;
+				matchEnd = base + end;
+				return a.accept[a.stateOf(acceptState)];
+			}
+			if (begin == limit) {
+				done = true;
+				matchStart = matchEnd = -1;
+				return null;
+			}
+			begin++;
+		}
+	}
+
+	/**
+	 * Drops the chars before <code>keep</code> and reads more chars into the
+	 * buffer, growing it if it is full. Sets <code>eof</code> at the end of the
+	 * stream.
+	 *
+	 * @return number of chars dropped from the front of the buffer
+	 */
+	private int fill(int keep) throws IOException {
+		keep = Math.min(keep, limit);
+		int n = limit - keep;
+		char[] b = buf;
+		if (n * 2 > b.length)
+			b = new char[b.length * 2];
+		System.arraycopy(buf, keep, b, 0, n);
+		buf = b;
+		base += keep;
+		limit = n;
+		CharBuffer cb = CharBuffer.wrap(buf, limit, buf.length - limit);
+		int r;
+		do
+			r = in.read(cb);
+		while (r == 0);
+		if (r < 0)
+			eof = true;
+		else
+			limit += r;
+		return keep;
+	}
+
+	/**
+	 * Returns the offset in the stream of the first char of the last match.
+	 *
+	 * @throws IllegalStateException if the last <code>find</code> found no match
+	 */
+	public long start() {
+		if (matchStart < 0)
+			throw new IllegalStateException("There was no available match.");
+		return matchStart;
+	}
+
+	/**
+	 * Returns the offset in the stream after the last char of the last match.
+	 *
+	 * @throws IllegalStateException if the last <code>find</code> found no match
+	 */
+	public long end() {
+		if (matchEnd < 0)
+			throw new IllegalStateException("There was no available match.");
+		return matchEnd;
+	}
+
+	/**
+	 * Returns the chars of the last match.
+	 *
+	 * @throws IllegalStateException if the last <code>find</code> found no match
+	 */
+	public String group() {
+		int s = (int) (start() - base);
+		return new String(buf, s, (int) (matchEnd - base) - s);
+	}
+}
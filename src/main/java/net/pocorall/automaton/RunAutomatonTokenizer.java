@@ -0,0 +1,326 @@
+package net.pocorall.automaton;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Maximal-munch lexer on a {@link RunAutomaton}.
+ * <p/>
+ * The tokenizer is built from a list of patterns, each with a token type. At
+ * each offset it takes the longest prefix of the remaining input that some
+ * pattern accepts; if several patterns accept that prefix, the one given first
+ * wins. Chars that start no token are reported as tokens of type -1, one per
+ * run of such chars.
+ * <p/>
+ * Input is given in chunks with <code>setInput</code>, and tokens are written
+ * into a caller-supplied <code>int[]</code> as (start, end, type) triples with
+ * offsets counted from the first char of the first chunk and types given as
+ * indexes into the pattern list. A token may span several chunks; only the
+ * chars of the token being matched are kept between calls. No objects are
+ * created per token.
+ * <p/>
+ * A token that fails to match is retried from the next offset. So that this
+ * does not read the same chars again and again, the tokenizer remembers the
+ * (state, offset) pairs from which no token can be accepted, as in Reps,
+ * "Maximal-munch tokenization in linear time", and stops a run that reaches
+ * one of them. Each pair is then visited at most once, and tokenizing takes
+ * time linear in the input (times the number of states in the worst case).
+ * <pre>
+ * tokenizer.setInput(chunk);
+ * while ((n = tokenizer.tokenize(tokens)) &gt; 0)
+ *     ... tokens[0] to tokens[3 * n - 1] ...
+ * // repeat for the other chunks, then
+ * tokenizer.endInput();
+ * while ((n = tokenizer.tokenize(tokens)) &gt; 0)
+ *     ...
+ * </pre>
+ * A tokenizer is not thread safe, but it can be {@link #reset()} and reused.
+ */
+public class RunAutomatonTokenizer {
+
+	private final RunAutomaton automaton;
+	private final Object[] types;
+	private final int[] tokenType; // index of the winning pattern of each accept state
+
+	private char[] buf = new char[256]; // input not consumed yet, from the start of the current token
+	private int base; // offset of buf[0] in the whole input
+	private int limit; // number of chars in buf
+	private boolean ended; // set by endInput()
+
+	private int tokenStart; // start of the current token, relative to buf
+	private int pos; // next char to read, relative to buf
+	private int p; // current state
+	private int acceptEnd; // end of the longest token so far, tokenStart if none
+	private int acceptState; // accept state at acceptEnd
+	private int errorStart; // start of the pending run of unmatched chars, -1 if none (absolute)
+	private int[] trail = new int[257]; // state after each char of the current token, by offset from tokenStart
+
+	// (state, offset) pairs from which no token is accepted, see tokenize(), with absolute offsets
+	private long[] failed = new long[64]; // open addressing, FREE slots are empty
+	private long[] spare = new long[64]; // table to rehash into
+	private int failedCount;
+	private int failedEnd; // largest offset in failed, -1 if none
+
+	private static final long FREE = -1;
+
+	/**
+	 * Constructs a new tokenizer.
+	 *
+	 * @param types    token types, returned by {@link #getType(int)}
+	 * @param patterns patterns of the token types, in order of priority
+	 */
+	public RunAutomatonTokenizer(Object[] types, DefaultAutomaton[] patterns) {
+		if (types.length != patterns.length)
+			throw new IllegalArgumentException("Need one token type per pattern");
+		this.types = types.clone();
+		automaton = new RunAutomaton(compile(patterns));
+		tokenType = new int[automaton.getSize()];
+		for (int n = 0; n < tokenType.length; n++)
+			tokenType[n] = automaton.accept[n] == null ? -1 : (Integer) automaton.accept[n];
+		reset();
+	}
+
+	/**
+	 * Returns a deterministic automaton of the union of the given patterns whose
+	 * accept objects are the indexes of the first pattern accepting.
+	 */
+	static DefaultAutomaton compile(DefaultAutomaton[] patterns) {
+		Set<State> initialset = new HashSet<State>();
+		for (int i = 0; i < patterns.length; i++) {
+			DefaultAutomaton a = patterns[i].cloneExpanded();
+			for (State s : a.getStates())
+				if (s.accept != null)
+					s.accept = i;
+			initialset.add(a.initial);
+		}
+		DefaultAutomaton a = new DefaultAutomaton();
+		BasicOperations.determinize(a, initialset, AcceptMergers.minimum());
+		return a;
+	}
+
+	/**
+	 * Returns the token type of the given index.
+	 */
+	public Object getType(int index) {
+		return types[index];
+	}
+
+	/**
+	 * Forgets all input and starts again at offset 0.
+	 */
+	public void reset() {
+		base = 0;
+		limit = 0;
+		ended = false;
+		tokenStart = 0;
+		pos = 0;
+		p = automaton.start;
+		acceptEnd = 0;
+		errorStart = -1;
+		Arrays.fill(failed, FREE);
+		failedCount = 0;
+		failedEnd = -1;
+	}
+
+	/**
+	 * Appends the given chars to the input.
+	 */
+	public void setInput(char[] b, int off, int len) {
+		if (ended)
+			throw new IllegalStateException("Input has ended");
+		makeRoom(len);
+		System.arraycopy(b, off, buf, limit, len);
+		limit += len;
+	}
+
+	/**
+	 * Appends the given chars to the input.
+	 */
+	public void setInput(CharSequence s) {
+		if (ended)
+			throw new IllegalStateException("Input has ended");
+		int len = s.length();
+		makeRoom(len);
+		if (s instanceof String)
+			((String) s).getChars(0, len, buf, limit);
+		else
+			for (int i = 0; i < len; i++)
+				buf[limit + i] = s.charAt(i);
+		limit += len;
+	}
+
+	/**
+	 * Marks the end of the input, so that the last token can be reported.
+	 */
+	public void endInput() {
+		ended = true;
+	}
+
+	/**
+	 * Returns true if all input has been tokenized and more is needed.
+	 */
+	public boolean needsInput() {
+		return !ended && pos == limit;
+	}
+
+	/**
+	 * Drops the chars before the current token and makes room for <code>len</code>
+	 * more chars in the buffer.
+	 */
+	private void makeRoom(int len) {
+		int keep = limit - tokenStart;
+		char[] b = buf;
+		if (keep + len > b.length)
+			b = new char[Math.max(keep + len, b.length * 2)];
+		System.arraycopy(buf, tokenStart, b, 0, keep);
+		if (b != buf) {
+			int[] t = new int[b.length + 1];
+			System.arraycopy(trail, 0, t, 0, keep + 1);
+			trail = t;
+		}
+		buf = b;
+		base += tokenStart;
+		pos -= tokenStart;
+		acceptEnd -= tokenStart;
+		limit = keep;
+		tokenStart = 0;
+	}
+
+	/**
+	 * Tokenizes the input given so far and writes the tokens into the given
+	 * array as (start, end, type) triples. A token that may still grow is held
+	 * back until more input is given or the input has ended.
+	 * <p/>
+	 * When a run stops, the pairs it visited after its last accept state are
+	 * recorded as failed, and later runs stop when they reach one.
+	 *
+	 * @param tokens array receiving the tokens, of length at least 6
+	 * @return number of tokens written, 0 if more input is needed or the input
+	 *         has ended and all tokens have been written
+	 * @throws IllegalArgumentException if the array is shorter than 6
+	 */
+	public int tokenize(int[] tokens) {
+		if (tokens.length < 6)
+			throw new IllegalArgumentException("Need room for at least 2 tokens");
+		final RunAutomaton a = automaton;
+		final int dead = a.dead;
+		final int acceptLimit = a.acceptLimit;
+		final char[] b = buf;
+		final int[] trail = this.trail;
+		int k = 0;
+		// two tokens may be written per step: a run of unmatched chars and a token
+		while (k + 6 <= tokens.length) {
+			int failedLimit = failedEnd - base;
+			while (pos < limit) {
+				p = a.next(p, b[pos++]);
+				if (p == dead || pos <= failedLimit && isFailed(p, base + pos)) {
+					p = dead;
+					break;
+				}
+				trail[pos - tokenStart] = p;
+				if (p < acceptLimit) {
+					acceptEnd = pos;
+					acceptState = p;
+				}
+			}
+			if (p != dead && !ended)
+				break;
+			if (tokenStart == limit) {
+				// all input consumed, only the end of input is left
+				if (errorStart >= 0) {
+					k = put(tokens, k, errorStart, base + limit, -1);
+					errorStart = -1;
+				}
+				break;
+			}
+			for (int i = acceptEnd + 1, end = p == dead ? pos - 1 : pos; i <= end; i++)
+				addFailed(trail[i - tokenStart], base + i);
+			if (acceptEnd > tokenStart) {
+				if (errorStart >= 0) {
+					k = put(tokens, k, errorStart, base + tokenStart, -1);
+					errorStart = -1;
+				}
+				k = put(tokens, k, base + tokenStart, base + acceptEnd, tokenType[a.stateOf(acceptState)]);
+				tokenStart = acceptEnd;
+			} else {
+				if (errorStart < 0)
+					errorStart = base + tokenStart;
+				tokenStart++;
+			}
+			pos = acceptEnd = tokenStart;
+			p = a.start;
+		}
+		return k / 3;
+	}
+
+	private static int slot(long key, int length) {
+		return (int) (key * 0x9E3779B97F4A7C15L >>> 32) & (length - 1);
+	}
+
+	/**
+	 * Returns whether the given pair is recorded as failed.
+	 */
+	private boolean isFailed(int state, int offset) {
+		long key = ((long) offset << 32) | state;
+		final long[] t = failed;
+		for (int i = slot(key, t.length); t[i] != FREE; i = (i + 1) & (t.length - 1))
+			if (t[i] == key)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Records the given pair as failed.
+	 */
+	private void addFailed(int state, int offset) {
+		if (2 * (failedCount + 1) > failed.length)
+			rehash();
+		long key = ((long) offset << 32) | state;
+		final long[] t = failed;
+		int i = slot(key, t.length);
+		for (; t[i] != FREE; i = (i + 1) & (t.length - 1))
+			if (t[i] == key)
+				return;
+		t[i] = key;
+		failedCount++;
+		if (offset > failedEnd)
+			failedEnd = offset;
+	}
+
+	/**
+	 * Drops the failed pairs before the current token, which no run reaches
+	 * again, and doubles the table if it would still be more than a quarter
+	 * full.
+	 */
+	private void rehash() {
+		int from = base + tokenStart;
+		int live = 0;
+		for (long key : failed)
+			if (key != FREE && (int) (key >>> 32) > from)
+				live++;
+		long[] t = spare;
+		if (4 * (live + 1) > t.length)
+			t = new long[Math.max(t.length * 2, Integer.highestOneBit(4 * (live + 1)) * 2)];
+		Arrays.fill(t, FREE);
+		long[] old = failed;
+		failedCount = 0;
+		for (long key : old)
+			if (key != FREE && (int) (key >>> 32) > from) {
+				int i = slot(key, t.length);
+				while (t[i] != FREE)
+					i = (i + 1) & (t.length - 1);
+				t[i] = key;
+				failedCount++;
+			}
+		failed = t;
+		spare = old.length == t.length ? old : new long[t.length];
+	}
+
+	private static int put(int[] tokens, int k, int start, int end, int type) {
+		tokens[k] = start;
+		tokens[k + 1] = end;
+		tokens[k + 2] = type;
+		return k + 3;
+	}
+}
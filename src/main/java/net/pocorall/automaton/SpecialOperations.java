@@ -52,7 +52,7 @@ final public class SpecialOperations {
 		Set<State> accept = a.getAcceptStates();
 		for (State r : states) {
 			m.put(r, new HashSet<Transition>());
-			r.accept = false;
+			r.accept = null;
 		}
 		for (State r : states)
 			for (Transition t : r.getTransitions())
@@ -65,6 +65,7 @@ final public class SpecialOperations {
 		for (State r : accept)
 			a.initial.addEpsilon(r); // ensures that all initial states are reachable
 		a.deterministic = false;
+		a.clearHashCode();
 		return accept;
 	}
 
@@ -92,6 +93,7 @@ final public class SpecialOperations {
 			s.addEpsilon(r);
 		a.initial = s;
 		a.deterministic = false;
+		a.clearHashCode();
 	}
 
 	/**
@@ -34,6 +34,11 @@ import java.util.*;
 
 /**
  * <tt>DefaultAutomaton</tt> state.
+ * <p/>
+ * A nondeterministic automaton caches an array form of its states for
+ * {@link LinkedAutomaton#run(String)}. After changing states of an automaton
+ * that has been run, set its initial state again with
+ * {@link LinkedAutomaton#setInitialState(State)} to drop the stale array form.
  *
  * @author Anders M&oslash;ller &lt;<a href="mailto:amoeller@cs.au.dk">amoeller@cs.au.dk</a>&gt;
  */
@@ -1,5 +1,6 @@
 package net.pocorall.automaton;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -308,6 +309,46 @@ final public class StringUnionOperations {
 	 * @return Root automaton state.
 	 */
 	public State complete() {
+		return completeRoot().toState();
+	}
+
+	/**
+	 * Finalize the automaton and return a {@link DictionaryAutomaton} that finds
+	 * the added sequences in a text in one pass. No more strings can be added to
+	 * the builder after this call.
+	 *
+	 * @return Dictionary automaton of the added sequences.
+	 */
+	public DictionaryAutomaton completeDictionary() {
+		CharState r = completeRoot();
+		// unfold the shared suffixes into a trie, numbering nodes in breadth-first order
+		ArrayList<CharState> nodes = new ArrayList<CharState>();
+		StringBuilder labels = new StringBuilder();
+		nodes.add(r);
+		labels.append('\0');
+		int[] firstChild = new int[16];
+		for (int n = 0; n < nodes.size(); n++) {
+			if (n == firstChild.length) {
+				int[] a = new int[firstChild.length * 2];
+				System.arraycopy(firstChild, 0, a, 0, firstChild.length);
+				firstChild = a;
+			}
+			firstChild[n] = nodes.size();
+			CharState s = nodes.get(n);
+			labels.append(s.labels);
+			for (CharState c : s.charStates)
+				nodes.add(c);
+		}
+		int[] first = new int[nodes.size() + 1];
+		System.arraycopy(firstChild, 0, first, 0, nodes.size());
+		first[nodes.size()] = nodes.size();
+		Object[] accept = new Object[nodes.size()];
+		for (int n = 0; n < accept.length; n++)
+			accept[n] = nodes.get(n).is_final;
+		return new DictionaryAutomaton(labels.toString().toCharArray(), first, accept);
+	}
+
+	private CharState completeRoot() {
 		if (this.register == null)
 			throw new IllegalStateException();
 
@@ -315,7 +356,7 @@ final public class StringUnionOperations {
 			replaceOrRegister(root);
 
 		register = null;
-		return root.toState();
+		return root;
 	}
 
 
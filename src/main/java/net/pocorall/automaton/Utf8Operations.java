@@ -0,0 +1,237 @@
+package net.pocorall.automaton;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Conversion of automata over UTF-16 chars to automata over UTF-8 bytes.
+ */
+final public class Utf8Operations {
+
+	private Utf8Operations() {
+	}
+
+	/**
+	 * Returns a deterministic automaton over bytes (as the chars 0 to 255) that
+	 * accepts the UTF-8 encodings of the strings accepted by the given
+	 * automaton, with the same accept objects. A surrogate pair is read as the
+	 * four-byte encoding of its code point; strings with unpaired surrogates,
+	 * which have no UTF-8 encoding, are dropped.
+	 *
+	 * @see ByteRunAutomaton
+	 */
+	public static DefaultAutomaton toUtf8(DefaultAutomaton a) {
+		a = a.cloneExpanded();
+		BasicOperations.determinize(a);
+		return new Builder(a).build();
+	}
+
+	/**
+	 * Builds the byte automaton. Each state of the char automaton becomes a byte
+	 * state; the bytes of a multi-byte sequence go through intermediate states
+	 * keyed by the source state and the bytes read so far, so the result is
+	 * deterministic.
+	 */
+	private static class Builder {
+
+		final DefaultAutomaton a;
+		final Map<State, State> states = new HashMap<State, State>(); // char state to byte state
+		final Map<State, State[]> next = new HashMap<State, State[]>(); // byte transitions of each byte state
+		final Map<State, State[]> tails = new HashMap<State, State[]>(); // tails.get(t)[k]: k continuation bytes to t
+
+		Builder(DefaultAutomaton a) {
+			this.a = a;
+		}
+
+		DefaultAutomaton build() {
+			for (State s : a.getStates()) {
+				State r = new State();
+				r.accept = s.accept;
+				states.put(s, r);
+			}
+			for (State s : a.getStates()) {
+				State r = states.get(s);
+				for (Transition t : s.transitions) {
+					State to = states.get(t.to);
+					// the chars outside the surrogate range are code points of their own
+					if (t.min < 0xd800)
+						add(r, t.min, Math.min(t.max, 0xd7ff), to);
+					if (t.max > 0xdfff)
+						add(r, Math.max(t.min, 0xe000), t.max, to);
+					// a high surrogate followed by a low surrogate is a supplementary code point
+					int hmin = Math.max(t.min, 0xd800);
+					int hmax = Math.min(t.max, 0xdbff);
+					if (hmin <= hmax)
+						for (Transition u : t.to.transitions) {
+							int lmin = Math.max(u.min, 0xdc00);
+							int lmax = Math.min(u.max, 0xdfff);
+							if (lmin > lmax)
+								continue;
+							State uto = states.get(u.to);
+							if (lmin == 0xdc00 && lmax == 0xdfff)
+								add(r, codePoint(hmin, lmin), codePoint(hmax, lmax), uto);
+							else
+								for (int h = hmin; h <= hmax; h++)
+									add(r, codePoint(h, lmin), codePoint(h, lmax), uto);
+						}
+				}
+			}
+			for (Map.Entry<State, State[]> e : next.entrySet()) {
+				State[] n = e.getValue();
+				for (int b = 0; b < 256; b++)
+					if (n[b] != null)
+						e.getKey().transitions.add(new Transition((char) b, n[b]));
+			}
+			DefaultAutomaton r = new DefaultAutomaton();
+			r.initial = states.get(a.initial);
+			r.deterministic = true;
+			r.reduce();
+			r.removeDeadTransitions();
+			return r;
+		}
+
+		static int codePoint(int high, int low) {
+			return 0x10000 + ((high - 0xd800) << 10) + (low - 0xdc00);
+		}
+
+		/**
+		 * Adds transitions from <code>s</code> to <code>to</code> on the encodings
+		 * of the code points <code>min</code> to <code>max</code>.
+		 */
+		void add(State s, int min, int max, State to) {
+			// split into ranges whose encodings have the same length
+			int[] limits = {0x7f, 0x7ff, 0xffff, 0x10ffff};
+			for (int limit : limits) {
+				if (min > max)
+					break;
+				if (min <= limit) {
+					int m = Math.min(max, limit);
+					add(s, encode(min), encode(m), 0, to);
+					min = m + 1;
+				}
+			}
+		}
+
+		/**
+		 * Adds transitions from <code>s</code> to <code>to</code> on the byte
+		 * sequences from <code>lo</code> to <code>hi</code>, which have the same
+		 * length and agree before index <code>d</code>.
+		 */
+		void add(State s, int[] lo, int[] hi, int d, State to) {
+			int last = lo.length - 1;
+			if (d == last) {
+				for (int b = lo[d]; b <= hi[d]; b++)
+					put(s, b, to);
+				return;
+			}
+			if (lo[d] == hi[d]) {
+				add(child(s, lo[d]), lo, hi, d + 1, to);
+				return;
+			}
+			int first = lo[d];
+			if (!isMin(lo, d + 1)) {
+				add(child(s, lo[d]), lo, max(lo, d + 1), d + 1, to);
+				first++;
+			}
+			int end = hi[d];
+			if (!isMax(hi, d + 1)) {
+				add(child(s, hi[d]), min(hi, d + 1), hi, d + 1, to);
+				end--;
+			}
+			State tail = tail(to, last - d);
+			for (int b = first; b <= end; b++)
+				put(s, b, tail);
+		}
+
+		void put(State s, int b, State to) {
+			State[] n = next.get(s);
+			if (n == null) {
+				n = new State[256];
+				next.put(s, n);
+			}
+			n[b] = to;
+		}
+
+		/**
+		 * Returns the state after reading byte <code>b</code> from the
+		 * intermediate or char state <code>s</code>, creating it if needed.
+		 */
+		State child(State s, int b) {
+			State[] n = next.get(s);
+			State c = n == null ? null : n[b];
+			if (c == null) {
+				c = new State();
+				put(s, b, c);
+			}
+			return c;
+		}
+
+		/**
+		 * Returns a state that reads any <code>k</code> continuation bytes and
+		 * then is in state <code>to</code>.
+		 */
+		State tail(State to, int k) {
+			State[] t = tails.get(to);
+			if (t == null) {
+				t = new State[4];
+				t[0] = to;
+				tails.put(to, t);
+			}
+			if (t[k] == null) {
+				State s = new State();
+				State n = tail(to, k - 1);
+				for (int b = 0x80; b <= 0xbf; b++)
+					put(s, b, n);
+				t[k] = s;
+			}
+			return t[k];
+		}
+
+		static int[] encode(int c) {
+			if (c < 0x80)
+				return new int[] {c};
+			else if (c < 0x800)
+				return new int[] {0xc0 | c >> 6, 0x80 | c & 0x3f};
+			else if (c < 0x10000)
+				return new int[] {0xe0 | c >> 12, 0x80 | c >> 6 & 0x3f, 0x80 | c & 0x3f};
+			else
+				return new int[] {0xf0 | c >> 18, 0x80 | c >> 12 & 0x3f, 0x80 | c >> 6 & 0x3f, 0x80 | c & 0x3f};
+		}
+
+		static boolean isMin(int[] b, int from) {
+			for (int i = from; i < b.length; i++)
+				if (b[i] != 0x80)
+					return false;
+			return true;
+		}
+
+		static boolean isMax(int[] b, int from) {
+			for (int i = from; i < b.length; i++)
+				if (b[i] != 0xbf)
+					return false;
+			return true;
+		}
+
+		/**
+		 * Returns <code>b</code> with the bytes from <code>from</code> on set to
+		 * the smallest continuation byte.
+		 */
+		static int[] min(int[] b, int from) {
+			int[] r = b.clone();
+			for (int i = from; i < r.length; i++)
+				r[i] = 0x80;
+			return r;
+		}
+
+		/**
+		 * Returns <code>b</code> with the bytes from <code>from</code> on set to
+		 * the largest continuation byte.
+		 */
+		static int[] max(int[] b, int from) {
+			int[] r = b.clone();
+			for (int i = from; i < r.length; i++)
+				r[i] = 0xbf;
+			return r;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class AcceptMergersTest {
+
+	private static DefaultAutomaton tagged(String regexp, Object accept) {
+		DefaultAutomaton a = new RegExp(regexp).toAutomaton().cloneExpanded();
+		for (State s : a.getAcceptStates())
+			s.setAccept(accept);
+		return a;
+	}
+
+	private static DefaultAutomaton union() {
+		return BasicOperations.union(Arrays.asList(tagged("ab", 2), tagged("a.", 1), tagged("a[a-c]", 3)));
+	}
+
+	@Test
+	public void testDeterminize() {
+		DefaultAutomaton a = union();
+		BasicOperations.determinize(a, AcceptMergers.collectAll());
+		assertEquals(new HashSet<Object>(Arrays.asList(1, 2, 3)), a.run("ab"));
+		assertEquals(new HashSet<Object>(Arrays.asList(1, 3)), a.run("ac"));
+		assertEquals(1, a.run("ad"));
+
+		a = union();
+		BasicOperations.determinize(a, AcceptMergers.minimum());
+		assertEquals(1, a.run("ab"));
+		assertEquals(1, a.run("ac"));
+
+		a = union();
+		BasicOperations.determinize(a);
+		assertEquals(true, a.run("ab"));
+		assertEquals(1, a.run("ad"));
+		assertEquals(1, new RunAutomaton(union()).run("ad"));
+	}
+
+	@Test
+	public void testIntersection() {
+		DefaultAutomaton a = BasicOperations.intersection(tagged("a*", "x"), tagged("a+", "x"));
+		assertEquals("x", a.run("aa"));
+		AcceptMerger merger = LinkedAutomaton.getAcceptMerger();
+		try {
+			LinkedAutomaton.setAcceptMerger(AcceptMergers.collectAll());
+			a = BasicOperations.intersection(tagged("a*", "x"), tagged("a+", "y"));
+			assertEquals(new HashSet<Object>(Arrays.asList("x", "y")), a.run("aa"));
+		} finally {
+			LinkedAutomaton.setAcceptMerger(merger);
+		}
+	}
+}
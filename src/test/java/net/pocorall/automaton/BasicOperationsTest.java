@@ -0,0 +1,184 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static net.pocorall.automaton.BasicAutomataFactory.*;
+import static net.pocorall.automaton.SpecialOperations.*;
+import static org.junit.Assert.*;
+
+public class BasicOperationsTest {
+	@Test
+	public void testConcatenate() throws Exception {
+		// the accept states of the left operands do not accept any more
+		DefaultAutomaton automaton = BasicOperations.concatenate(makeString("a").cloneExpanded(), makeString("b").cloneExpanded());
+		assertEquals(Collections.singleton("ab"), getFiniteStrings(automaton));
+		automaton = BasicOperations.concatenate(Arrays.asList(makeChar('a'), makeChar('b'), makeChar('c')));
+		assertEquals(Collections.singleton("abc"), getFiniteStrings(automaton));
+		assertNull(new RunAutomaton(new RegExp("a+b").toAutomaton()).newMatcher("aaa").find());
+	}
+
+	/**
+	 * Subset construction over sets of states, as determinize did before it
+	 * worked on state numbers.
+	 */
+	private static void determinizeBySets(DefaultAutomaton a) {
+		a.expandSingleton();
+		char[] points = a.getStartPoints();
+		Set<State> initialset = new HashSet<State>();
+		initialset.add(a.initial);
+		LinkedList<Set<State>> worklist = new LinkedList<Set<State>>();
+		Map<Set<State>, State> newstate = new HashMap<Set<State>, State>();
+		worklist.add(initialset);
+		a.initial = new State();
+		newstate.put(initialset, a.initial);
+		while (worklist.size() > 0) {
+			Set<State> s = worklist.removeFirst();
+			State r = newstate.get(s);
+			for (State q : s)
+				if (q.accept != null)
+					r.accept = true;
+			for (int n = 0; n < points.length; n++) {
+				Set<State> p = new HashSet<State>();
+				for (State q : s)
+					for (Transition t : q.transitions)
+						if (t.min <= points[n] && points[n] <= t.max)
+							p.add(t.to);
+				State q = newstate.get(p);
+				if (q == null) {
+					q = new State();
+					newstate.put(p, q);
+					worklist.add(p);
+				}
+				char max = n + 1 < points.length ? (char) (points[n + 1] - 1) : Character.MAX_VALUE;
+				r.transitions.add(new Transition(points[n], max, q));
+			}
+		}
+		a.deterministic = true;
+		a.removeDeadTransitions();
+	}
+
+	private static List<String> allStrings(String chars, int maxLength) {
+		List<String> strings = new ArrayList<String>();
+		strings.add("");
+		for (int i = 0; i < strings.size(); i++)
+			if (strings.get(i).length() < maxLength)
+				for (char c : chars.toCharArray())
+					strings.add(strings.get(i) + c);
+		return strings;
+	}
+
+	private static String randomString(Random random, int maxLength) {
+		StringBuilder b = new StringBuilder();
+		for (int i = random.nextInt(maxLength + 1); i > 0; i--)
+			b.append("abc".charAt(random.nextInt(3)));
+		return b.toString();
+	}
+
+	private static DefaultAutomaton tagged(String regexp, Object accept) {
+		DefaultAutomaton a = new RegExp(regexp).toAutomaton().cloneExpanded();
+		for (State s : a.getAcceptStates())
+			s.setAccept(accept);
+		return a;
+	}
+
+	@Test
+	public void testDeterminizeRandomUnions() {
+		Random random = new Random(17);
+		List<String> strings = allStrings("abcd", 6);
+		for (int round = 0; round < 100; round++) {
+			List<DefaultAutomaton> branches = new ArrayList<DefaultAutomaton>();
+			for (int i = 1 + random.nextInt(6); i > 0; i--) {
+				String regexp = randomString(random, 2) + "(" + randomString(random, 2) + ")*" + randomString(random, 2);
+				branches.add(new RegExp(random.nextBoolean() ? regexp : "[b-d]" + regexp).toAutomaton());
+			}
+			DefaultAutomaton expected = BasicOperations.union(branches);
+			DefaultAutomaton actual = expected.clone();
+			determinizeBySets(expected);
+			BasicOperations.determinize(actual);
+			assertTrue(actual.isDeterministic());
+			for (String s : strings)
+				assertEquals(branches + " " + s, expected.run(s), actual.run(s));
+			assertTrue(actual.getNumberOfStates() <= expected.getNumberOfStates());
+			actual.minimize();
+			expected.minimize();
+			assertEquals(expected.getNumberOfStates(), actual.getNumberOfStates());
+		}
+	}
+
+	@Test
+	public void testDeterminizeDeadStates() {
+		// a branch into a non-accepting sink, next to ab
+		State initial = new State();
+		State sink = new State();
+		State b = new State();
+		State accept = new State();
+		accept.setAccept(true);
+		initial.addTransition(new Transition('a', sink));
+		initial.addTransition(new Transition('a', b));
+		sink.addTransition(new Transition('a', 'z', sink));
+		b.addTransition(new Transition('b', accept));
+		DefaultAutomaton a = new DefaultAutomaton();
+		a.setInitialState(initial);
+		a.setDeterministic(false);
+		BasicOperations.determinize(a);
+		assertEquals(3, a.getNumberOfStates());
+		assertEquals(1, a.getInitialState().getTransitions().size());
+		assertEquals(true, a.run("ab"));
+		assertEquals(false, a.run("aa"));
+
+		// all branches lead to the sink only
+		initial = new State();
+		sink = new State();
+		initial.addTransition(new Transition('a', sink));
+		initial.addTransition(new Transition('b', sink));
+		sink.addTransition(new Transition('a', 'z', sink));
+		a = new DefaultAutomaton();
+		a.setInitialState(initial);
+		a.setDeterministic(false);
+		BasicOperations.determinize(a);
+		assertEquals(1, a.getNumberOfStates());
+		assertTrue(a.getInitialState().getTransitions().isEmpty());
+	}
+
+	@Test
+	public void testDeterminizeAcceptMerger() {
+		AcceptMerger merger = LinkedAutomaton.getAcceptMerger();
+		DefaultAutomaton a = BasicOperations.union(Arrays.asList(tagged("ab", 2), tagged("a.", 1), tagged("b", 3)));
+		BasicOperations.determinize(a, AcceptMergers.minimum());
+		assertEquals(1, a.run("ab"));
+		assertEquals(1, a.run("ac"));
+		assertEquals(3, a.run("b"));
+		assertSame(merger, LinkedAutomaton.getAcceptMerger());
+
+		a = BasicOperations.union(Arrays.asList(tagged("ab", 2), tagged("a.", 1), tagged("b", 3)));
+		BasicOperations.determinize(a, AcceptMergers.collectAll());
+		assertEquals(new HashSet<Object>(Arrays.asList(1, 2)), a.run("ab"));
+		assertEquals(1, a.run("ac"));
+	}
+
+	@Test
+	public void testDeterminizeAdjacentIntervals() {
+		// [a-c]z splits [a-f] at d, but both halves lead to the same set
+		DefaultAutomaton a = BasicOperations.union(new RegExp("[a-f]x").toAutomaton(), new RegExp("y[a-c]z").toAutomaton());
+		BasicOperations.determinize(a);
+		Set<Transition> transitions = a.getInitialState().getTransitions();
+		assertEquals(2, transitions.size());
+		boolean merged = false;
+		for (Transition t : transitions)
+			merged |= t.getMin() == 'a' && t.getMax() == 'f';
+		assertTrue(transitions.toString(), merged);
+		assertEquals(true, a.run("ex"));
+		assertEquals(true, a.run("ybz"));
+	}
+}
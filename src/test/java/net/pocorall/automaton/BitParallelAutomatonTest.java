@@ -0,0 +1,116 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BitParallelAutomatonTest {
+
+	private static String randomString(Random random, String chars, int length) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			b.append(chars.charAt(random.nextInt(chars.length())));
+		return b.toString();
+	}
+
+	private static DefaultAutomaton tagged(String regexp, Object accept) {
+		DefaultAutomaton a = new RegExp(regexp).toAutomaton().cloneExpanded();
+		for (State s : a.getAcceptStates())
+			s.setAccept(accept);
+		return a;
+	}
+
+	@Test
+	public void testRun() {
+		// a{70}b* needs two words
+		String[] regexps = {"(a|b)*abb", "a{2,4}b?", "[^a]*", "(ab|a)(c|bcd)", "中+.", "a{70}b*", ""};
+		Random random = new Random(1);
+		for (String regexp : regexps) {
+			DefaultAutomaton a = new RegExp(regexp).toAutomaton();
+			RunAutomaton r = new RunAutomaton(a);
+			BitParallelAutomaton b = new BitParallelAutomaton(a);
+			for (int n = 0; n < 300; n++) {
+				String s = randomString(random, "abcd中", random.nextInt(12));
+				assertEquals(regexp + " " + s, r.run(s), b.run(s));
+			}
+			StringBuilder s = new StringBuilder();
+			for (int n = 0; n < 75; n++) {
+				assertEquals(regexp + " " + s, r.run(s.toString()), b.run(s.toString()));
+				s.append('a');
+			}
+		}
+	}
+
+	@Test
+	public void testNondeterministic() {
+		// .*a.{20}, whose deterministic automaton has more than 2^20 states
+		DefaultAutomaton a = BasicOperations.concatenate(Arrays.asList(BasicAutomataFactory.makeAnyString(),
+				BasicAutomataFactory.makeChar('a'), BasicOperations.repeat(BasicAutomataFactory.makeAnyChar(), 20, 20)));
+		BitParallelAutomaton b = new BitParallelAutomaton(a);
+		Random random = new Random(2);
+		for (int n = 0; n < 100; n++) {
+			String s = randomString(random, "ab", 21 + random.nextInt(100));
+			assertEquals(s.charAt(s.length() - 21) == 'a', Boolean.TRUE.equals(b.run(s)));
+		}
+	}
+
+	@Test
+	public void testMatch() {
+		String[] regexps = {"ab+", "b*", "a(b|c)*d", "[a-c]{3}", "(ab){40}"};
+		Random random = new Random(3);
+		for (String regexp : regexps) {
+			DefaultAutomaton a = new RegExp(regexp).toAutomaton();
+			RunAutomaton r = new RunAutomaton(a);
+			BitParallelAutomaton b = new BitParallelAutomaton(a);
+			int[] expected = new int[2];
+			int[] match = new int[2];
+			for (int n = 0; n < 100; n++) {
+				String s = randomString(random, "abcd", random.nextInt(30));
+				if (n % 10 == 0)
+					s = s + "abababababababababababababababababababababababababababababababababababababababab";
+				for (int begin = 0; begin <= s.length(); begin++) {
+					Object accept = r.match(s, begin, expected);
+					assertEquals(regexp + " " + s, accept, b.match(s, begin, match));
+					if (accept != null)
+						assertArrayEquals(expected, match);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooManyPositions() {
+		new BitParallelAutomaton(new RegExp("[a-z]{300}").toAutomaton());
+	}
+
+	@Test
+	public void testAcceptObjects() {
+		AcceptMerger merger = LinkedAutomaton.getAcceptMerger();
+		try {
+			for (AcceptMerger m : new AcceptMerger[] {AcceptMergers.DEFAULT, AcceptMergers.minimum()}) {
+				LinkedAutomaton.setAcceptMerger(m);
+				// a{70}b* needs two words
+				DefaultAutomaton a = BasicOperations.union(Arrays.asList(tagged("ab", 2), tagged("a.", 1),
+						tagged("(ab)*", 3), tagged("a{70}b*", 4), tagged("a{69}(a|b)b", 5)));
+				RunAutomaton r = new RunAutomaton(a.clone());
+				BitParallelAutomaton b = new BitParallelAutomaton(a);
+				assertEquals(m == AcceptMergers.DEFAULT ? true : 1, b.run("ab"));
+				Random random = new Random(4);
+				int[] expected = new int[2];
+				int[] match = new int[2];
+				for (int n = 0; n < 300; n++) {
+					String s = randomString(random, "ab", random.nextInt(8));
+					if (n % 2 == 0)
+						s = randomString(random, "a", 66 + random.nextInt(8)) + s;
+					assertEquals(s, r.run(s), b.run(s));
+					assertEquals(s, r.match(s, 0, expected), b.match(s, 0, match));
+				}
+			}
+		} finally {
+			LinkedAutomaton.setAcceptMerger(merger);
+		}
+	}
+}
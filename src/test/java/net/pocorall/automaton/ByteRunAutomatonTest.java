@@ -0,0 +1,78 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ByteRunAutomatonTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String CHARS = "abé߿ࠀ中￯𐀀😀􏿿";
+
+	private static String randomString(Random random, int length) {
+		StringBuilder b = new StringBuilder();
+		while (b.length() < length) {
+			int i = random.nextInt(CHARS.length());
+			char c = CHARS.charAt(i);
+			if (Character.isHighSurrogate(c))
+				b.append(c).append(CHARS.charAt(i + 1));
+			else if (!Character.isLowSurrogate(c))
+				b.append(c);
+		}
+		return b.toString();
+	}
+
+	@Test
+	public void testRun() {
+		String[] regexps = {"aé*", "[\u0080-中]+b", "[^a]*", ".😀?", "[\ud800-\udbff][\udc00-\udfff]a"};
+		Random random = new Random(1);
+		for (String regexp : regexps) {
+			DefaultAutomaton a = new RegExp(regexp).toAutomaton();
+			RunAutomaton chars = new RunAutomaton(a);
+			ByteRunAutomaton bytes = new ByteRunAutomaton(a);
+			for (int n = 0; n < 300; n++) {
+				String s = randomString(random, random.nextInt(5));
+				byte[] b = s.getBytes(UTF8);
+				assertEquals(regexp + " " + s, chars.run(s), bytes.run(b, 0, b.length));
+				assertEquals(chars.run(s), bytes.run(ByteBuffer.wrap(b)));
+				ByteBuffer direct = ByteBuffer.allocateDirect(b.length);
+				direct.put(b).flip();
+				assertEquals(chars.run(s), bytes.run(direct));
+			}
+		}
+	}
+
+	@Test
+	public void testMatcher() {
+		String[] regexps = {"aé+", "[\u0080-中]+b?", "b*", "😀|ࠀ"};
+		Random random = new Random(2);
+		for (String regexp : regexps) {
+			DefaultAutomaton a = new RegExp(regexp).toAutomaton();
+			RunAutomaton chars = new RunAutomaton(a);
+			ByteRunAutomaton bytes = new ByteRunAutomaton(a);
+			for (int n = 0; n < 100; n++) {
+				String s = randomString(random, random.nextInt(30));
+				ByteBuffer b = ByteBuffer.wrap(s.getBytes(UTF8));
+				RunAutomatonMatcher expected = chars.newMatcher(s);
+				ByteRunAutomatonMatcher actual = bytes.newMatcher(b);
+				Object accept;
+				do {
+					accept = expected.find();
+					// the char matcher also finds empty matches between the chars of a surrogate pair
+					while (accept != null && expected.start() < s.length() && Character.isLowSurrogate(s.charAt(expected.start())))
+						accept = expected.find();
+					assertEquals(regexp + " " + s, accept, actual.find());
+					if (accept != null) {
+						assertEquals(regexp + " " + s, s.substring(0, expected.start()).getBytes(UTF8).length, actual.start());
+						assertEquals(s.substring(0, expected.end()).getBytes(UTF8).length, actual.end());
+					}
+				} while (accept != null);
+			}
+		}
+	}
+}
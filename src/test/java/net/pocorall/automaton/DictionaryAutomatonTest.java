@@ -0,0 +1,111 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DictionaryAutomatonTest {
+
+	private static DictionaryAutomaton build(String... words) {
+		Arrays.sort(words, StringUnionOperations.LEXICOGRAPHIC_ORDER);
+		StringUnionOperations builder = new StringUnionOperations();
+		for (String word : words)
+			builder.add(word, word);
+		return builder.completeDictionary();
+	}
+
+	private static class Collector implements MatchHandler {
+		final List<String> matches = new ArrayList<String>();
+
+		public void onMatch(int start, int end, Object accept) {
+			matches.add(start + "-" + end + ":" + accept);
+		}
+	}
+
+	@Test
+	public void testRun() {
+		DictionaryAutomaton d = build("he", "she", "his", "hers");
+		assertEquals("she", d.run("she"));
+		assertEquals("hers", d.run("hers"));
+		assertNull(d.run("her"));
+		assertEquals(false, d.run("hex"));
+	}
+
+	@Test
+	public void testFindAll() {
+		DictionaryAutomaton d = build("he", "she", "his", "hers");
+		Collector c = new Collector();
+		d.findAll("ushers", c);
+		assertEquals(Arrays.asList("1-4:she", "2-4:he", "2-6:hers"), c.matches);
+	}
+
+	@Test
+	public void testFindLongest() {
+		Random random = new Random(7);
+		for (int round = 0; round < 200; round++) {
+			String[] words = new String[1 + random.nextInt(8)];
+			for (int n = 0; n < words.length; n++)
+				words[n] = randomString(random, 1 + random.nextInt(4));
+			DictionaryAutomaton d = build(words.clone());
+
+			StringUnionOperations builder = new StringUnionOperations();
+			Arrays.sort(words, StringUnionOperations.LEXICOGRAPHIC_ORDER);
+			for (String word : words)
+				builder.add(word, word);
+			DefaultAutomaton a = new DefaultAutomaton();
+			a.setInitialState(builder.complete());
+			a.setDeterministic(true);
+			RunAutomaton r = new RunAutomaton(a);
+
+			String text = randomString(random, round % 20 == 0 ? 9000 : 40); // long texts span several blocks
+			Collector expected = new Collector();
+			RunAutomatonMatcher m = r.newMatcher(text);
+			for (Object accept = m.find(); accept != null; accept = m.find())
+				expected.onMatch(m.start(), m.end(), accept);
+			Collector actual = new Collector();
+			d.findLongest(text, actual);
+			assertEquals(text + " " + Arrays.toString(words), expected.matches, actual.matches);
+		}
+	}
+
+	@Test
+	public void testFindLongestNested() {
+		int k = 50;
+		String[] words = new String[k + 1];
+		StringBuilder b = new StringBuilder();
+		for (int n = 0; n < k; n++) {
+			b.append('a');
+			words[n] = b.toString();
+		}
+		words[k] = b + "b";
+		DictionaryAutomaton d = build(words);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10000; i++)
+			text.append('a');
+		Collector c = new Collector();
+		d.findLongest(text, c);
+		assertEquals(10000 / k, c.matches.size());
+		assertEquals("0-50:" + words[k - 1], c.matches.get(0));
+		assertEquals("9950-10000:" + words[k - 1], c.matches.get(c.matches.size() - 1));
+
+		// a short word inside a long unfinished one
+		d = build("a", b + "b");
+		c = new Collector();
+		d.findLongest(text + "ab", c);
+		assertEquals(9952, c.matches.size());
+		assertEquals("9950-9951:a", c.matches.get(9950));
+		assertEquals("9951-10002:" + b + "b", c.matches.get(9951));
+	}
+
+	private static String randomString(Random random, int length) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			b.append((char) ('a' + random.nextInt(3)));
+		return b.toString();
+	}
+}
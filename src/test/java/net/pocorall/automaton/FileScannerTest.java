@@ -0,0 +1,109 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FileScannerTest {
+
+	@Test
+	public void testSameMatches() throws IOException {
+		String[] regexps = {"ab+", "a[^z]*z", "b*", "(ab|é)+c?", "zz|azé"};
+		Random random = new Random(13);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		File file = File.createTempFile("scan", ".txt");
+		try {
+			for (int round = 0; round < 20; round++) {
+				StringBuilder b = new StringBuilder();
+				for (int i = random.nextInt(400); i > 0; i--)
+					b.append("abcéz".charAt(random.nextInt(5)));
+				byte[] bytes = b.toString().getBytes(Charset.forName("UTF-8"));
+				FileOutputStream out = new FileOutputStream(file);
+				out.write(bytes);
+				out.close();
+				for (String regexp : regexps) {
+					ByteRunAutomaton automaton = new ByteRunAutomaton(new RegExp(regexp).toAutomaton());
+					StringBuilder expected = new StringBuilder();
+					ByteRunAutomatonMatcher m = automaton.newMatcher(ByteBuffer.wrap(bytes));
+					for (Object accept = m.find(); accept != null; accept = m.find())
+						expected.append(m.start()).append('-').append(m.end()).append(' ');
+					final StringBuilder actual = new StringBuilder();
+					new FileScanner(automaton, executor, 1 + random.nextInt(20), 1 + random.nextInt(5)).scan(file, new FileMatchHandler() {
+						public void onMatch(long start, long end, Object accept) {
+							actual.append(start).append('-').append(end).append(' ');
+						}
+					});
+					assertEquals(regexp, expected.toString(), actual.toString());
+				}
+			}
+		} finally {
+			executor.shutdown();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testPendingChunks() throws IOException {
+		final AtomicInteger submitted = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		ExecutorService executor = new AbstractExecutorService() {
+			public void execute(Runnable command) {
+				submitted.incrementAndGet();
+				pool.execute(command);
+			}
+
+			public void shutdown() {
+				pool.shutdown();
+			}
+
+			public List<Runnable> shutdownNow() {
+				return pool.shutdownNow();
+			}
+
+			public boolean isShutdown() {
+				return pool.isShutdown();
+			}
+
+			public boolean isTerminated() {
+				return pool.isTerminated();
+			}
+
+			public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+				return pool.awaitTermination(timeout, unit);
+			}
+		};
+		File file = File.createTempFile("scan", ".txt");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			for (int i = 0; i < 1000; i++)
+				out.write('a');
+			out.close();
+			final int[] matches = new int[1];
+			new FileScanner(new ByteRunAutomaton(new RegExp("a").toAutomaton()), executor, 10, 3).scan(file, new FileMatchHandler() {
+				public void onMatch(long start, long end, Object accept) {
+					// the chunk of this match and at most two more were submitted
+					assertTrue(submitted.get() <= start / 10 + 3);
+					matches[0]++;
+				}
+			});
+			assertEquals(1000, matches[0]);
+			assertEquals(100, submitted.get());
+		} finally {
+			executor.shutdown();
+			file.delete();
+		}
+	}
+}
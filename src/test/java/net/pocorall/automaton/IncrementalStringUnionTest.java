@@ -0,0 +1,109 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class IncrementalStringUnionTest {
+
+	@Test
+	public void testAddRemove() {
+		IncrementalStringUnion u = new IncrementalStringUnion();
+		assertNull(u.add(1, "she"));
+		assertNull(u.add(2, "he"));
+		assertNull(u.add(3, "hers"));
+		assertEquals(2, u.add(4, "he"));
+		assertEquals(3, u.size());
+		assertEquals(4, u.get("he"));
+		assertNull(u.get("her"));
+
+		RunAutomaton r = u.toRunAutomaton();
+		assertEquals(1, r.run("she"));
+		assertEquals(4, r.run("he"));
+		assertNull(r.run("her"));
+		assertEquals(false, r.run("hex"));
+
+		assertEquals(1, u.remove("she"));
+		assertNull(u.remove("she"));
+		assertEquals(2, u.size());
+		assertEquals(1, r.run("she"));
+		assertEquals(false, u.toRunAutomaton().run("she"));
+
+		u.remove("he");
+		u.remove("hers");
+		assertEquals(0, u.size());
+		assertEquals(0, u.getNumberOfStates());
+		assertEquals(false, u.toAutomaton().run("he"));
+	}
+
+	@Test
+	public void testEmptyString() {
+		IncrementalStringUnion u = new IncrementalStringUnion();
+		u.add("empty", "");
+		u.add("a", "a");
+		assertEquals("empty", u.toRunAutomaton().run(""));
+		u.remove("");
+		assertNull(u.toRunAutomaton().run(""));
+		assertEquals(2, u.getNumberOfStates());
+	}
+
+	@Test
+	public void testMinimal() {
+		Random random = new Random(11);
+		for (int round = 0; round < 100; round++) {
+			IncrementalStringUnion u = new IncrementalStringUnion();
+			Map<String, Integer> expected = new TreeMap<String, Integer>();
+			for (int step = 0; step < 60; step++) {
+				String s = randomString(random, random.nextInt(6));
+				if (random.nextInt(3) == 0) {
+					assertEquals(expected.remove(s), u.remove(s));
+				} else {
+					Integer accept = random.nextInt(2);
+					assertEquals(expected.put(s, accept), u.add(accept, s));
+				}
+			}
+			assertEquals(expected.size(), u.size());
+
+			DefaultAutomaton a = u.toAutomaton();
+			for (String s : allStrings(5))
+				assertEquals(s, expected.get(s), accept(a.run(s)));
+
+			StringUnionOperations builder = new StringUnionOperations();
+			for (Map.Entry<String, Integer> e : expected.entrySet())
+				if (e.getKey().length() > 0)
+					builder.add(e.getValue(), e.getKey());
+			DefaultAutomaton b = new DefaultAutomaton();
+			b.setInitialState(builder.complete());
+			int states = expected.isEmpty() ? 0 : b.getNumberOfStates();
+			assertEquals(expected.toString(), states, u.getNumberOfStates());
+			assertEquals(Math.max(states, 1), a.getNumberOfStates());
+		}
+	}
+
+	private static Object accept(Object o) {
+		return Boolean.FALSE.equals(o) ? null : o;
+	}
+
+	private static List<String> allStrings(int maxLength) {
+		List<String> strings = new ArrayList<String>();
+		strings.add("");
+		for (int i = 0; i < strings.size(); i++)
+			if (strings.get(i).length() < maxLength)
+				for (char c = 'a'; c <= 'c'; c++)
+					strings.add(strings.get(i) + c);
+		return strings;
+	}
+
+	private static String randomString(Random random, int length) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			b.append((char) ('a' + random.nextInt(3)));
+		return b.toString();
+	}
+}
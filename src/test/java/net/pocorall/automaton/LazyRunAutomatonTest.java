@@ -0,0 +1,73 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LazyRunAutomatonTest {
+
+	private static String randomString(Random random, String chars, int length) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			b.append(chars.charAt(random.nextInt(chars.length())));
+		return b.toString();
+	}
+
+	@Test
+	public void testRun() {
+		String[] regexps = {"(a|b)*abb", "a{2,4}b?", "[^a]*", "(ab|a)(c|bcd)", "中+.", ".*a.{6}"};
+		Random random = new Random(1);
+		for (String regexp : regexps) {
+			DefaultAutomaton a = new RegExp(regexp).toAutomaton();
+			RunAutomaton r = new RunAutomaton(a);
+			for (int maxStates : new int[] {2, 4, 1000}) {
+				LazyRunAutomaton lazy = new LazyRunAutomaton(a, maxStates);
+				for (int n = 0; n < 300; n++) {
+					String s = randomString(random, "abcd中", random.nextInt(12));
+					assertEquals(regexp + " " + s, r.run(s), lazy.run(s));
+				}
+				assertTrue(lazy.getCachedStates() <= maxStates);
+			}
+		}
+	}
+
+	@Test
+	public void testNondeterministic() {
+		// .*a.{20}, whose deterministic automaton has more than 2^20 states
+		DefaultAutomaton a = BasicOperations.concatenate(Arrays.asList(BasicAutomataFactory.makeAnyString(),
+				BasicAutomataFactory.makeChar('a'), BasicOperations.repeat(BasicAutomataFactory.makeAnyChar(), 20, 20)));
+		LazyRunAutomaton lazy = new LazyRunAutomaton(a, 64);
+		Random random = new Random(2);
+		String s = randomString(random, "ab", 5000);
+		assertEquals(s.charAt(s.length() - 21) == 'a', Boolean.TRUE.equals(lazy.run(s)));
+		assertEquals(true, lazy.run(s.substring(0, 100) + "a" + randomString(random, "ab", 20)));
+		assertTrue(lazy.getCachedStates() <= 64);
+	}
+
+	@Test
+	public void testMatcher() {
+		String[] regexps = {"ab+", "b*", "a(b|c)*d", "[a-c]{3}"};
+		Random random = new Random(3);
+		for (String regexp : regexps) {
+			DefaultAutomaton a = new RegExp(regexp).toAutomaton();
+			RunAutomaton r = new RunAutomaton(a);
+			LazyRunAutomaton lazy = new LazyRunAutomaton(a, 3);
+			for (int n = 0; n < 100; n++) {
+				String s = randomString(random, "abcd", random.nextInt(30));
+				RunAutomatonMatcher expected = r.newMatcher(s);
+				LazyRunAutomatonMatcher m = lazy.newMatcher(s);
+				Object accept;
+				while ((accept = expected.find()) != null) {
+					assertEquals(regexp + " " + s, accept, m.find());
+					assertEquals(expected.start(), m.start());
+					assertEquals(expected.end(), m.end());
+					assertEquals(expected.group(), m.group());
+				}
+				assertNull(m.find());
+			}
+		}
+	}
+}
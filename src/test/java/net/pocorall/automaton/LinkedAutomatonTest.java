@@ -0,0 +1,72 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LinkedAutomatonTest {
+
+	@Test
+	public void testRunNondeterministic() {
+		// .*a.{5}b
+		DefaultAutomaton a = BasicOperations.concatenate(Arrays.asList(BasicAutomataFactory.makeAnyString(),
+				BasicAutomataFactory.makeChar('a'), BasicOperations.repeat(BasicAutomataFactory.makeAnyChar(), 5, 5),
+				BasicAutomataFactory.makeChar('b')));
+		assertFalse(a.isDeterministic());
+		RunAutomaton r = new RunAutomaton(a);
+		Random random = new Random(1);
+		for (int n = 0; n < 500; n++) {
+			StringBuilder b = new StringBuilder();
+			for (int i = random.nextInt(20); i > 0; i--)
+				b.append((char) ('a' + random.nextInt(3)));
+			String s = b.toString();
+			assertEquals(s, Boolean.TRUE.equals(r.run(s)), Boolean.TRUE.equals(a.run(s)));
+		}
+
+		// the array form follows a new initial state
+		State s = new State();
+		s.setAccept(true);
+		a.setInitialState(s);
+		assertEquals(true, a.run(""));
+		assertEquals(false, a.run("aaaaaab"));
+	}
+
+	@Test
+	public void testRunAfterReverse() {
+		DefaultAutomaton a = BasicOperations.union(Arrays.asList(BasicAutomataFactory.makeString("ab"),
+				BasicAutomataFactory.makeString("ac")));
+		a.setDeterministic(false);
+		assertEquals(true, a.run("ab"));
+		SpecialOperations.reverse(a);
+		assertEquals(false, a.run("ab"));
+		assertEquals(true, a.run("ba"));
+	}
+
+	@Test
+	public void testRunMergesAcceptObjects() {
+		State s = new State();
+		State x = new State();
+		State y = new State();
+		x.setAccept("x");
+		y.setAccept("y");
+		s.addTransition(new Transition('a', x));
+		s.addTransition(new Transition('a', y));
+		DefaultAutomaton a = new DefaultAutomaton();
+		a.setInitialState(s);
+		a.setDeterministic(false);
+		assertEquals(true, a.run("a"));
+		AcceptMerger merger = LinkedAutomaton.getAcceptMerger();
+		try {
+			LinkedAutomaton.setAcceptMerger(AcceptMergers.minimum());
+			assertEquals("x", a.run("a"));
+			DefaultAutomaton d = a.clone();
+			BasicOperations.determinize(d);
+			assertEquals("x", d.run("a"));
+		} finally {
+			LinkedAutomaton.setAcceptMerger(merger);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MatcherTest {
+
+	private static DefaultAutomaton nondeterministic(int n) {
+		// .*a.{n}
+		return BasicOperations.concatenate(Arrays.asList(BasicAutomataFactory.makeAnyString(),
+				BasicAutomataFactory.makeChar('a'), BasicOperations.repeat(BasicAutomataFactory.makeAnyChar(), n, n)));
+	}
+
+	private static DefaultAutomaton union(int n) {
+		// a nondeterministic union of n strings, whose deterministic automaton is a small trie
+		List<DefaultAutomaton> strings = new ArrayList<DefaultAutomaton>();
+		for (int i = 0; i < n; i++)
+			strings.add(BasicAutomataFactory.makeString(Integer.toString(i * 7, 4).replace('0', 'a').replace('1', 'b').replace('2', 'c').replace('3', 'd')));
+		return BasicOperations.union(strings);
+	}
+
+	private static DefaultAutomaton tagged(String regexp, Object accept) {
+		DefaultAutomaton a = new RegExp(regexp).toAutomaton().cloneExpanded();
+		for (State s : a.getAcceptStates())
+			s.setAccept(accept);
+		return a;
+	}
+
+	private static List<String> scan(Matcher m, String s) {
+		final List<String> matches = new ArrayList<String>();
+		m.scan(s, new MatchHandler() {
+			public void onMatch(int start, int end, Object accept) {
+				matches.add(start + "-" + end + ":" + accept);
+			}
+		});
+		return matches;
+	}
+
+	private static List<String> expected(RunAutomaton r, String s) {
+		List<String> matches = new ArrayList<String>();
+		RunAutomatonMatcher m = r.newMatcher(s);
+		for (Object accept = m.find(); accept != null; accept = m.find())
+			matches.add(m.start() + "-" + m.end() + ":" + accept);
+		return matches;
+	}
+
+	private static String find(RunAutomaton r, String s, int from) {
+		int[] match = new int[2];
+		for (int begin = from; begin <= s.length(); begin++) {
+			Object accept = r.match(s, begin, match);
+			if (accept != null)
+				return match[0] + "-" + match[1] + ":" + accept;
+		}
+		return "none";
+	}
+
+	private static String find(Matcher m, String s, int from) {
+		int[] match = new int[2];
+		Object accept = m.find(s, from, match);
+		return accept != null ? match[0] + "-" + match[1] + ":" + accept : "none";
+	}
+
+	@Test
+	public void testEngines() {
+		DefaultAutomaton literal = BasicAutomataFactory.makeString("abc");
+		assertEquals(Matcher.Engine.LITERAL, new Matcher(literal).getEngine());
+		RunAutomaton r = new RunAutomaton(literal.clone());
+		for (String s : new String[] {"", "ab", "abc", "abcd", "x"})
+			assertEquals(s, r.run(s), new Matcher(literal).run(s));
+		assertEquals(Matcher.Engine.DFA, new Matcher(new RegExp("ab*c").toAutomaton()).getEngine());
+		assertEquals(Matcher.Engine.BIT_PARALLEL, new Matcher(nondeterministic(3)).getEngine());
+		assertEquals(Matcher.Engine.DFA, new Matcher(union(300)).getEngine());
+		assertEquals(Matcher.Engine.LAZY_DFA, new Matcher(union(300), 50).getEngine());
+		assertEquals(Matcher.Engine.LAZY_DFA, new Matcher(nondeterministic(300)).getEngine());
+	}
+
+	@Test
+	public void testFind() {
+		DefaultAutomaton[] automata = {BasicAutomataFactory.makeString("aba"), BasicAutomataFactory.makeEmptyString(),
+				new RegExp("ab(c|d)*").toAutomaton(), new RegExp("b*").toAutomaton(), nondeterministic(2),
+				union(300)};
+		Random random = new Random(1);
+		for (DefaultAutomaton a : automata) {
+			RunAutomaton r = new RunAutomaton(a.clone());
+			Matcher[] matchers = {new Matcher(a), new Matcher(a, 50)};
+			for (int n = 0; n < 100; n++) {
+				StringBuilder b = new StringBuilder();
+				for (int i = random.nextInt(n % 10 == 0 ? 400 : 20); i > 0; i--)
+					b.append((char) ('a' + random.nextInt(4)));
+				String s = b.toString();
+				for (Matcher m : matchers) {
+					assertEquals(m.getEngine() + " " + s, r.run(s), m.run(s));
+					assertEquals(m.getEngine() + " " + s, expected(r, s), scan(m, s));
+					int from = random.nextInt(s.length() + 2);
+					assertEquals(m.getEngine() + " " + s, find(r, s, from), find(m, s, from));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testExploredAccept() {
+		// strings 0 to 299 in base 4, each accepting with itself, and a duplicate of "b"
+		List<DefaultAutomaton> strings = new ArrayList<DefaultAutomaton>();
+		for (int i = 0; i <= 300; i++) {
+			String string = Integer.toString(i < 300 ? i : 1, 4);
+			DefaultAutomaton a = BasicAutomataFactory.makeString(string).cloneExpanded();
+			for (State q : a.getAcceptStates())
+				q.setAccept(i < 300 ? string : "duplicate");
+			strings.add(a);
+		}
+		DefaultAutomaton a = BasicOperations.union(strings);
+		AcceptMerger merger = LinkedAutomaton.getAcceptMerger();
+		try {
+			LinkedAutomaton.setAcceptMerger(AcceptMergers.minimum());
+			Matcher m = new Matcher(a);
+			assertEquals(Matcher.Engine.DFA, m.getEngine());
+			assertEquals("123", m.run("123"));
+			assertEquals("1", m.run("1"));
+			int[] match = new int[2];
+			assertEquals("1", m.find("x1x", 0, match));
+		} finally {
+			LinkedAutomaton.setAcceptMerger(merger);
+		}
+	}
+
+	@Test
+	public void testSameAcceptObjects() {
+		AcceptMerger merger = LinkedAutomaton.getAcceptMerger();
+		try {
+			for (AcceptMerger m : new AcceptMerger[] {AcceptMergers.DEFAULT, AcceptMergers.minimum()}) {
+				LinkedAutomaton.setAcceptMerger(m);
+				DefaultAutomaton a = BasicOperations.union(Arrays.asList(tagged("ab", 2), tagged("a.", 1),
+						tagged("(ab)*c", 3), tagged("b+", 4)));
+				RunAutomaton r = new RunAutomaton(a.clone());
+				Matcher[] matchers = {new Matcher(a, 50, Matcher.Engine.DFA), new Matcher(a, 50, Matcher.Engine.BIT_PARALLEL),
+						new Matcher(a, 50, Matcher.Engine.LAZY_DFA), new Matcher(a, 2, Matcher.Engine.LAZY_DFA)};
+				Random random = new Random(9);
+				for (int n = 0; n < 200; n++) {
+					StringBuilder b = new StringBuilder();
+					for (int i = random.nextInt(30); i > 0; i--)
+						b.append("aabcx".charAt(random.nextInt(5)));
+					String s = b.toString();
+					for (Matcher matcher : matchers) {
+						assertEquals(matcher.getEngine() + " " + s, r.run(s), matcher.run(s));
+						assertEquals(matcher.getEngine() + " " + s, expected(r, s), scan(matcher, s));
+						int from = random.nextInt(s.length() + 1);
+						assertEquals(matcher.getEngine() + " " + s, find(r, s, from), find(matcher, s, from));
+					}
+				}
+			}
+		} finally {
+			LinkedAutomaton.setAcceptMerger(merger);
+		}
+	}
+
+	@Test
+	public void testFindLoop() {
+		// every find after the first reuses the marks of the input
+		Matcher m = new Matcher(nondeterministic(2));
+		assertEquals(Matcher.Engine.BIT_PARALLEL, m.getEngine());
+		StringBuilder b = new StringBuilder();
+		Random random = new Random(3);
+		for (int i = 0; i < 200000; i++)
+			b.append("abc".charAt(random.nextInt(3)));
+		String s = b.toString();
+		List<String> matches = new ArrayList<String>();
+		int[] match = new int[2];
+		for (int begin = 0; ; ) {
+			Object accept = m.find(s, begin, match);
+			if (accept == null)
+				break;
+			matches.add(match[0] + "-" + match[1] + ":" + accept);
+			begin = match[1] > match[0] ? match[1] : match[1] + 1;
+		}
+		assertEquals(scan(m, s), matches);
+
+		// an earlier offset and another input are marked again
+		RunAutomaton r = new RunAutomaton(nondeterministic(2));
+		String t = "xxabxxaxx";
+		assertEquals(find(r, t, 5), find(m, t, 5));
+		assertEquals(find(r, t, 0), find(m, t, 0));
+		assertEquals(find(r, "xax", 0), find(m, "xax", 0));
+	}
+}
@@ -0,0 +1,96 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MinimizationOperationsTest {
+
+	private static DefaultAutomaton tagged(String regexp, Object accept) {
+		DefaultAutomaton a = new RegExp(regexp).toAutomaton().cloneExpanded();
+		for (State s : a.getAcceptStates())
+			s.setAccept(accept);
+		return a;
+	}
+
+	private static DefaultAutomaton dictionary() {
+		DefaultAutomaton a = BasicOperations.union(Arrays.asList(tagged("ab", 1), tagged("cb", 2), tagged("db", 1), tagged("eb", 2)));
+		BasicOperations.determinize(a);
+		return a;
+	}
+
+	@Test
+	public void testHopcroftKeepsAcceptObjects() {
+		DefaultAutomaton a = dictionary();
+		MinimizationOperations.minimizeHopcroft(a);
+		assertEquals(1, a.run("ab"));
+		assertEquals(2, a.run("cb"));
+		assertEquals(1, a.run("db"));
+		assertEquals(2, a.run("eb"));
+		// one final state per accept object
+		assertEquals(5, a.getNumberOfStates());
+	}
+
+	@Test
+	public void testHopcroftClassifier() {
+		DefaultAutomaton a = dictionary();
+		MinimizationOperations.minimizeHopcroft(a, new AcceptClassifier() {
+			public Object classify(Object accept) {
+				return true;
+			}
+		});
+		assertEquals(3, a.getNumberOfStates());
+		assertEquals(true, a.run("ab"));
+		assertEquals(true, a.run("cb"));
+	}
+
+	@Test
+	public void testHuffmanKeepsAcceptObjects() {
+		DefaultAutomaton a = dictionary();
+		MinimizationOperations.minimizeHuffman(a);
+		assertEquals(1, a.run("ab"));
+		assertEquals(2, a.run("eb"));
+		assertEquals(5, a.getNumberOfStates());
+	}
+
+	@Test
+	public void testValmari() {
+		DefaultAutomaton a = dictionary();
+		MinimizationOperations.minimizeValmari(a);
+		assertEquals(1, a.run("ab"));
+		assertEquals(2, a.run("cb"));
+		assertEquals(5, a.getNumberOfStates());
+
+		String[] regexps = {"(a|b)*abb", "[a-c]{2,5}", "(ab|ba)*c?", "[^a]*a[^b]*", "(中|c)+d{3}"};
+		Random random = new Random(1);
+		for (String regexp : regexps) {
+			DefaultAutomaton nfa = new RegExp(regexp).toAutomaton();
+			List<DefaultAutomaton> strings = new ArrayList<DefaultAutomaton>();
+			strings.add(nfa);
+			for (int n = 0; n < 50; n++)
+				strings.add(BasicAutomataFactory.makeString(randomString(random)));
+			nfa = BasicOperations.union(strings);
+			DefaultAutomaton hopcroft = nfa.clone();
+			MinimizationOperations.minimizeHopcroft(hopcroft);
+			DefaultAutomaton valmari = nfa.clone();
+			MinimizationOperations.minimizeValmari(valmari);
+			assertEquals(regexp, hopcroft.getNumberOfStates(), valmari.getNumberOfStates());
+			for (int n = 0; n < 500; n++) {
+				String s = randomString(random);
+				assertEquals(regexp + " " + s, hopcroft.run(s), valmari.run(s));
+			}
+		}
+	}
+
+	private static String randomString(Random random) {
+		StringBuilder b = new StringBuilder();
+		for (int i = random.nextInt(7); i > 0; i--)
+			b.append("abcd中".charAt(random.nextInt(5)));
+		return b.toString();
+	}
+}
@@ -0,0 +1,47 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RunAutomatonCompilerTest {
+
+	@Test
+	public void testSameResults() {
+		String[] regexps = {"[a-z]+@[a-z]+\\.(com|net|org)", "(ab|[c-f]+|g[^h]?)*x", "", "[Ā-￿]b*"};
+		Random random = new Random(19);
+		for (String regexp : regexps) {
+			for (boolean premultiply : new boolean[] {false, true}) {
+				RunAutomaton automaton = new RunAutomaton(new RegExp(regexp).toAutomaton(), true, premultiply);
+				Automaton compiled = RunAutomatonCompiler.compile(automaton);
+				assertNotSame(automaton, compiled);
+				for (int n = 0; n < 1000; n++) {
+					StringBuilder b = new StringBuilder();
+					for (int i = random.nextInt(12); i > 0; i--)
+						b.append("abcdefghx@.comnetorgĀ￿".charAt(random.nextInt(22)));
+					String s = b.toString();
+					assertEquals(regexp + " " + s, automaton.run(s), compiled.run(s));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAcceptObjects() {
+		RunAutomaton patterns = new RunAutomatonTest.PatternMatcher().add("a", "A").add("ab", 32).add("hi", "smile").build();
+		Automaton compiled = RunAutomatonCompiler.compile(patterns);
+		assertEquals("A", compiled.run("a"));
+		assertEquals(32, compiled.run("ab"));
+		assertEquals(false, compiled.run("ax"));
+		assertNull(compiled.run("h"));
+	}
+
+	@Test
+	public void testTooLarge() {
+		DefaultAutomaton a = new RegExp("([0-9]{3}[a-z]{2}){200}").toAutomaton();
+		RunAutomaton automaton = new RunAutomaton(a);
+		assertSame(automaton, RunAutomatonCompiler.compile(automaton));
+	}
+}
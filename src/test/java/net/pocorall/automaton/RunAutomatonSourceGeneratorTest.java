@@ -0,0 +1,60 @@
+package net.pocorall.automaton;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RunAutomatonSourceGeneratorTest {
+
+	@Test
+	public void testGeneratedClass() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeNotNull(compiler);
+		RunAutomaton automaton = new RunAutomatonTest.PatternMatcher().add("a", "A").add("a\"b\\\n", "quote\"").add("ab", 32).add("一", true).build();
+		File dir = File.createTempFile("generated", "");
+		dir.delete();
+		dir.mkdirs();
+		File source = new File(dir, "GeneratedMatcher.java");
+		FileWriter out = new FileWriter(source);
+		RunAutomatonSourceGenerator.generate(automaton, "GeneratedMatcher", out);
+		out.close();
+		String classpath = new File(Automaton.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+		assertEquals(0, compiler.run(null, null, null, "-cp", classpath, "-d", dir.getPath(), source.getPath()));
+		URLClassLoader loader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, Automaton.class.getClassLoader());
+		Object generated = loader.loadClass("GeneratedMatcher").getDeclaredConstructor().newInstance();
+		Automaton a = (Automaton) generated;
+
+		Random random = new Random(23);
+		for (int n = 0; n < 1000; n++) {
+			StringBuilder b = new StringBuilder();
+			for (int i = random.nextInt(5); i > 0; i--)
+				b.append("ab\"\\\n一x".charAt(random.nextInt(7)));
+			String s = b.toString();
+			assertEquals(s, automaton.run(s), a.run(s));
+			RunAutomatonMatcher matcher = automaton.newMatcher(s);
+			int[] match = new int[2];
+			Object accept = generated.getClass().getMethod("find", CharSequence.class, int.class, int[].class).invoke(generated, s, 0, match);
+			assertEquals(matcher.find(), accept);
+			if (accept != null) {
+				assertEquals(matcher.start(), match[0]);
+				assertEquals(matcher.end(), match[1]);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAcceptObject() throws IOException {
+		RunAutomaton automaton = new RunAutomatonTest.PatternMatcher().add("a", 'c').build();
+		RunAutomatonSourceGenerator.generate(automaton, "GeneratedMatcher", new StringBuilder());
+	}
+}
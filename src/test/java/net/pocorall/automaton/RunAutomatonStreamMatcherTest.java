@@ -0,0 +1,83 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RunAutomatonStreamMatcherTest {
+
+	/**
+	 * Reader that returns the chars of a string a few at a time.
+	 */
+	private static class ChunkedReader extends Reader {
+		private final String s;
+		private final Random random;
+		private int pos;
+
+		ChunkedReader(String s, Random random) {
+			this.s = s;
+			this.random = random;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if (pos == s.length())
+				return -1;
+			int n = Math.min(Math.min(len, s.length() - pos), random.nextInt(5));
+			s.getChars(pos, pos + n, cbuf, off);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@Test
+	public void testSameMatches() throws IOException {
+		String[] regexps = {"a+b", "(ab|c)*d?", "x*y|x", "abcd|c", "b*", "[^a]+"};
+		Random random = new Random(11);
+		for (String regexp : regexps) {
+			RunAutomaton automaton = new RunAutomaton(new RegExp(regexp).toAutomaton());
+			for (int n = 0; n < 100; n++) {
+				StringBuilder b = new StringBuilder();
+				for (int i = random.nextInt(60); i > 0; i--)
+					b.append("abcdxy".charAt(random.nextInt(6)));
+				String text = b.toString();
+				RunAutomatonMatcher expected = automaton.newMatcher(text);
+				RunAutomatonStreamMatcher actual = automaton.newStreamMatcher(new ChunkedReader(text, random));
+				Object accept;
+				do {
+					accept = expected.find();
+					assertEquals(regexp + " " + text, accept, actual.find());
+					if (accept != null) {
+						assertEquals(expected.start(), actual.start());
+						assertEquals(expected.end(), actual.end());
+						assertEquals(expected.group(), actual.group());
+					}
+				} while (accept != null);
+			}
+		}
+	}
+
+	@Test
+	public void testLongStream() throws IOException {
+		RunAutomaton automaton = new RunAutomaton(new RegExp("error [0-9]+").toAutomaton());
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < 100000; i++)
+			b.append(i % 1000 == 0 ? "error " + i : "ok ");
+		RunAutomatonStreamMatcher matcher = automaton.newStreamMatcher(CharBuffer.wrap(b));
+		int count = 0;
+		while (matcher.find() != null) {
+			assertEquals("error " + 1000 * count, matcher.group());
+			count++;
+		}
+		assertEquals(100, count);
+	}
+}
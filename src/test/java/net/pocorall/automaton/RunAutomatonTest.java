@@ -3,8 +3,11 @@ package net.pocorall.automaton;
 import org.junit.Test;
 
 import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class RunAutomatonTest {
 	static public class PatternMatcher {
@@ -41,4 +44,193 @@ public class RunAutomatonTest {
             System.out.println(matcher.token());
         }
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testCharClassTable() {
+		DefaultAutomaton a = new RegExp("[a-z\u00e9\u4e00-\u9fff]+[\uac00-\ud7a3]?").toAutomaton();
+		RunAutomaton tableized = new RunAutomaton(a, true);
+		RunAutomaton plain = new RunAutomaton(a, false);
+		assertTrue(tableized.classmap.length < 8 * 256);
+		for (int state = 0; state < tableized.getSize(); state++)
+			for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++)
+				assertEquals(plain.step(state, (char) c), tableized.step(state, (char) c));
+	}
+
+	@Test
+	public void testTransitionWidth() {
+		RunAutomaton small = new RunAutomaton(BasicAutomataFactory.makeString("abc"));
+		assertNotNull(small.transitions8);
+		assertEquals(-1, small.step(small.getInitialState(), 'x'));
+
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < 300; i++)
+			b.append((char) ('a' + i % 26));
+		String text = b.toString();
+		RunAutomaton large = new RunAutomaton(BasicAutomataFactory.makeString(text));
+		assertNull(large.transitions8);
+		assertNotNull(large.transitions16);
+		assertEquals(Boolean.TRUE, large.run(text));
+		assertEquals(Boolean.FALSE, large.run(text + "a"));
+		assertEquals(300, large.run(text + "!", 0));
+	}
+
+	@Test
+	public void testPremultipliedLayout() {
+		DefaultAutomaton a = new RegExp("(ab|[c-f]+|g[^h]?)*x").toAutomaton();
+		RunAutomaton plain = new RunAutomaton(a, true, false);
+		RunAutomaton premultiplied = new RunAutomaton(a, true, true);
+		assertEquals(0, premultiplied.stride & (premultiplied.stride - 1));
+		for (int state = 0; state < plain.getSize(); state++)
+			for (char c = 'a'; c <= 'z'; c++)
+				assertEquals(plain.step(state, c), premultiplied.step(state, c));
+		Random random = new Random(42);
+		for (int n = 0; n < 1000; n++) {
+			StringBuilder b = new StringBuilder();
+			for (int i = random.nextInt(12); i > 0; i--)
+				b.append("abcdefghx".charAt(random.nextInt(9)));
+			String s = b.toString();
+			assertEquals(plain.run(s), premultiplied.run(s));
+			assertEquals(plain.run(s, 0), premultiplied.run(s, 0));
+		}
+	}
+
+	@Test
+	public void testAcceptStatesFirst() {
+		RunAutomaton patterns = new PatternMatcher().add("a", 1).add("ab", 2).add("hi", 3).add("there!", 4).build();
+		for (int state = 0; state < patterns.getSize(); state++)
+			assertEquals(patterns.isAccept(state) != null, state < patterns.acceptLimit);
+		RunAutomatonMatcher matcher = patterns.newMatcher("xabyhithere!a");
+		assertEquals(2, matcher.find());
+		assertEquals("ab", matcher.group());
+		assertEquals(3, matcher.find());
+		assertEquals(4, matcher.find());
+		assertEquals(1, matcher.find());
+		assertEquals(12, matcher.start());
+		assertNull(matcher.find());
+	}
+
+	@Test
+	public void testSkipToStartChars() {
+		RunAutomaton single = new PatternMatcher().add("xab", 1).add("xb", 2).build();
+		assertEquals('x', single.startChar);
+		RunAutomaton several = new PatternMatcher().add("ab", 1).add("cd", 2).add("ce", 3).build();
+		assertEquals(-1, several.startChar);
+		String text = "qqxabqxxbqabxcdceqqcqxa";
+		for (RunAutomaton automaton : new RunAutomaton[]{single, several}) {
+			RunAutomatonMatcher m1 = automaton.newMatcher(text);
+			RunAutomatonMatcher m2 = automaton.newMatcher(new StringBuilder(text));
+			int begin = 0;
+			while (true) {
+				int start = begin, length = -1;
+				for (; start < text.length() && (length = automaton.run(text, start)) <= 0; start++) ;
+				Object accept = m1.find();
+				assertEquals(accept, m2.find());
+				if (start == text.length()) {
+					assertNull(accept);
+					break;
+				}
+				assertEquals(start, m1.start());
+				assertEquals(start + length, m1.end());
+				assertEquals(m1.end(), m2.end());
+				begin = m1.end();
+			}
+		}
+	}
+
+	@Test
+	public void testLinearMatcher() {
+		// the reverse automaton of .{20}a, .*a.{20}, is too large to build ahead
+		String[] regexps = {"a+b", "(ab|c)*d?", "x*y|x", "abcd|c", "(a|b)*a(a|b)", "b*", "[^a]+", ".{20}a"};
+		Random random = new Random(7);
+		for (String regexp : regexps) {
+			RunAutomaton automaton = new RunAutomaton(new RegExp(regexp).toAutomaton());
+			for (int n = 0; n < 200; n++) {
+				StringBuilder b = new StringBuilder();
+				for (int i = random.nextInt(40); i > 0; i--)
+					b.append("abcdxy".charAt(random.nextInt(6)));
+				RunAutomatonMatcher expected = automaton.newMatcher(b);
+				RunAutomatonMatcher linear = automaton.newLinearMatcher(b);
+				Object accept;
+				do {
+					accept = expected.find();
+					assertEquals(accept, linear.find());
+					if (accept != null) {
+						assertEquals(expected.start(), linear.start());
+						assertEquals(expected.end(), linear.end());
+					}
+				} while (accept != null);
+			}
+			assertEquals(regexp.equals(".{20}a"), automaton.getReverse() == null);
+		}
+	}
+
+	@Test
+	public void testFindAll() {
+		RunAutomaton patterns = new PatternMatcher().add("a", "A").add("ab", "AB").add("abc", "ABC").add("bc", "BC").build();
+		final StringBuilder found = new StringBuilder();
+		patterns.findAll("xabcab", new MatchHandler() {
+			public void onMatch(int start, int end, Object accept) {
+				found.append(start).append('-').append(end).append(accept).append(' ');
+			}
+		});
+		assertEquals("1-2A 1-3AB 1-4ABC 2-4BC 4-5A 4-6AB ", found.toString());
+
+		Random random = new Random(3);
+		for (String regexp : new String[] {"a+b?", "(ab|c)*d", "b*"}) {
+			final RunAutomaton automaton = new RunAutomaton(new RegExp(regexp).toAutomaton());
+			StringBuilder b = new StringBuilder();
+			for (int i = 30; i > 0; i--)
+				b.append("abcd".charAt(random.nextInt(4)));
+			final String text = b.toString();
+			final StringBuilder expected = new StringBuilder();
+			for (int end = 0; end <= text.length(); end++)
+				for (int start = 0; start <= end; start++) {
+					Object accept = automaton.run(text.substring(start, end));
+					if (accept != null && accept != Boolean.FALSE)
+						expected.append(start).append('-').append(end).append(' ');
+				}
+			found.setLength(0);
+			automaton.findAll(text, new MatchHandler() {
+				public void onMatch(int start, int end, Object accept) {
+					assertEquals(accept, automaton.run(text.substring(start, end)));
+					found.append(start).append('-').append(end).append(' ');
+				}
+			});
+			assertEquals(expected.toString(), found.toString());
+		}
+	}
+
+	@Test
+	public void testScan() {
+		RunAutomaton patterns = new PatternMatcher().add("a", "A").add("ab", "AB").add("bc", "BC").build();
+		final StringBuilder found = new StringBuilder();
+		patterns.scan("xabcabbc", new MatchHandler() {
+			public void onMatch(int start, int end, Object accept) {
+				found.append(start).append('-').append(end).append(accept).append(' ');
+			}
+		});
+		assertEquals("1-3AB 4-6AB 6-8BC ", found.toString());
+	}
+
+	@Test
+	public void testRunParallel() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Random random = new Random(17);
+			for (String regexp : new String[] {"(ab|c)*d?", "[^x]*x[^x]*", ".*a.{3}", "(a|b)*"}) {
+				for (boolean premultiply : new boolean[] {false, true}) {
+					RunAutomaton automaton = new RunAutomaton(new RegExp(regexp).toAutomaton(), true, premultiply);
+					for (int n = 0; n < 20; n++) {
+						StringBuilder b = new StringBuilder();
+						for (int i = random.nextInt(20000); i > 0; i--)
+							b.append(random.nextInt(50) == 0 ? 'x' : "abcd".charAt(random.nextInt(4)));
+						String s = b.toString();
+						assertEquals(regexp, automaton.run(s), automaton.runParallel(s, executor, 1 + random.nextInt(8)));
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package net.pocorall.automaton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RunAutomatonTokenizerTest {
+
+	private static final String[] REGEXPS = {"if|else", "[a-z]+", "[0-9]+(\\.[0-9]+)?", "\\.", "[ ]+"};
+
+	private static RunAutomatonTokenizer newTokenizer() {
+		DefaultAutomaton[] patterns = new DefaultAutomaton[REGEXPS.length];
+		for (int i = 0; i < patterns.length; i++)
+			patterns[i] = new RegExp(REGEXPS[i]).toAutomaton();
+		return new RunAutomatonTokenizer(new Object[] {"KEYWORD", "NAME", "NUMBER", "DOT", "SPACE"}, patterns);
+	}
+
+	private static String tokenize(RunAutomatonTokenizer tokenizer, String text) {
+		StringBuilder b = new StringBuilder();
+		int[] tokens = new int[6];
+		int n;
+		tokenizer.setInput(text);
+		tokenizer.endInput();
+		while ((n = tokenizer.tokenize(tokens)) > 0)
+			for (int i = 0; i < 3 * n; i += 3)
+				b.append(tokens[i]).append('-').append(tokens[i + 1]).append(':').append(tokens[i + 2]).append(' ');
+		return b.toString();
+	}
+
+	@Test
+	public void testPriority() {
+		RunAutomatonTokenizer tokenizer = newTokenizer();
+		assertEquals("0-2:0 2-3:4 3-7:1 7-8:4 8-12:2 12-13:3 13-15:-1 15-17:1 ", tokenize(tokenizer, "if iffy 1.25.#!ab"));
+		assertEquals("NAME", tokenizer.getType(1));
+	}
+
+	@Test
+	public void testChunks() {
+		RunAutomatonTokenizer tokenizer = newTokenizer();
+		Random random = new Random(5);
+		for (int round = 0; round < 100; round++) {
+			StringBuilder b = new StringBuilder();
+			for (int i = random.nextInt(100); i > 0; i--)
+				b.append("ifels 09.#".charAt(random.nextInt(10)));
+			String text = b.toString();
+			tokenizer.reset();
+			String expected = tokenize(tokenizer, text);
+
+			tokenizer.reset();
+			StringBuilder actual = new StringBuilder();
+			int[] tokens = new int[6 + 3 * random.nextInt(4)];
+			int offset = 0;
+			while (true) {
+				if (offset < text.length()) {
+					int end = Math.min(text.length(), offset + random.nextInt(8));
+					tokenizer.setInput(text.substring(offset, end));
+					offset = end;
+				} else
+					tokenizer.endInput();
+				int n;
+				while ((n = tokenizer.tokenize(tokens)) > 0)
+					for (int i = 0; i < 3 * n; i += 3)
+						actual.append(tokens[i]).append('-').append(tokens[i + 1]).append(':').append(tokens[i + 2]).append(' ');
+				if (offset == text.length() && !tokenizer.needsInput() && tokenizer.tokenize(tokens) == 0)
+					break;
+			}
+			assertEquals(text, expected, actual.toString());
+		}
+	}
+
+	@Test
+	public void testLongestMatch() {
+		RunAutomatonTokenizer tokenizer = newTokenizer();
+		RunAutomaton[] automata = new RunAutomaton[REGEXPS.length];
+		for (int i = 0; i < automata.length; i++)
+			automata[i] = new RunAutomaton(new RegExp(REGEXPS[i]).toAutomaton());
+		String text = "else elsewhere 3.14.15 if.x  9";
+		StringBuilder expected = new StringBuilder();
+		for (int offset = 0; offset < text.length(); ) {
+			int longest = -1;
+			int type = -1;
+			for (int i = 0; i < automata.length; i++) {
+				int length = automata[i].run(text, offset);
+				if (length > longest) {
+					longest = length;
+					type = i;
+				}
+			}
+			expected.append(offset).append('-').append(offset + longest).append(':').append(type).append(' ');
+			offset += longest;
+		}
+		assertEquals(expected.toString(), tokenize(tokenizer, text));
+	}
+
+	@Test
+	public void testFailedRuns() {
+		String[] regexps = {"a*b", "(ab)*c", "b+"};
+		DefaultAutomaton[] patterns = new DefaultAutomaton[regexps.length];
+		RunAutomaton[] automata = new RunAutomaton[regexps.length];
+		for (int i = 0; i < regexps.length; i++) {
+			patterns[i] = new RegExp(regexps[i]).toAutomaton();
+			automata[i] = new RunAutomaton(new RegExp(regexps[i]).toAutomaton());
+		}
+		RunAutomatonTokenizer tokenizer = new RunAutomatonTokenizer(new Object[] {"A", "C", "B"}, patterns);
+		Random random = new Random(7);
+		for (int round = 0; round < 200; round++) {
+			StringBuilder b = new StringBuilder();
+			for (int i = random.nextInt(round % 10 == 0 ? 2000 : 50); i > 0; i--)
+				b.append("aaabcx".charAt(random.nextInt(6)));
+			String text = b.toString();
+			StringBuilder expected = new StringBuilder();
+			int errorStart = -1;
+			for (int offset = 0; offset < text.length(); ) {
+				int longest = 0;
+				int type = -1;
+				for (int i = 0; i < automata.length; i++) {
+					int length = automata[i].run(text, offset);
+					if (length > longest) {
+						longest = length;
+						type = i;
+					}
+				}
+				if (longest == 0) {
+					if (errorStart < 0)
+						errorStart = offset;
+					offset++;
+					continue;
+				}
+				if (errorStart >= 0)
+					expected.append(errorStart).append('-').append(offset).append(":-1 ");
+				errorStart = -1;
+				expected.append(offset).append('-').append(offset + longest).append(':').append(type).append(' ');
+				offset += longest;
+			}
+			if (errorStart >= 0)
+				expected.append(errorStart).append('-').append(text.length()).append(":-1 ");
+			tokenizer.reset();
+			assertEquals(text, expected.toString(), tokenize(tokenizer, text));
+		}
+
+		// each failed start would read up to the end of the input again
+		char[] a = new char[100000];
+		Arrays.fill(a, 'a');
+		tokenizer.reset();
+		assertEquals("0-100000:-1 ", tokenize(tokenizer, new String(a)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShortTokenArray() {
+		RunAutomatonTokenizer tokenizer = newTokenizer();
+		tokenizer.setInput("if");
+		tokenizer.endInput();
+		tokenizer.tokenize(new int[3]);
+	}
+}
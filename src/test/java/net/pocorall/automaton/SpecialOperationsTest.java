@@ -2,6 +2,8 @@ package net.pocorall.automaton;
 
 import org.junit.Test;
 
+import java.util.Collections;
+
 import static net.pocorall.automaton.BasicAutomataFactory.*;
 import static net.pocorall.automaton.SpecialOperations.*;
 import static org.junit.Assert.*;
@@ -15,6 +17,11 @@ public class SpecialOperationsTest {
 		assertEquals(Boolean.FALSE, automaton.run("aa"));
 		assertFalse(automaton.isSingleton());
 		assertFalse(automaton.isEmpty());
+
+		// the old accept states do not accept any more
+		automaton = makeString("ab").cloneExpanded();
+		reverse(automaton);
+		assertEquals(Collections.singleton("ba"), getFiniteStrings(automaton));
 	}
 
 	@Test